@@ -0,0 +1,210 @@
+package inventory.bench;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Load test for the HTTP service (InventoryManagement --serve). Each connection is a virtual thread that
+// sends one request after another, so latencies are measured at a fixed concurrency (closed loop).
+//
+//   java -cp benchmarks/target/benchmarks.jar inventory.bench.HttpLoadTest [url] [connections] [seconds] [write %]
+//
+// Defaults: http://localhost:8080, 2000 connections, 30 seconds (after 5 seconds of warm-up), 5% writes.
+// Reads are 80% lookups, 10% pages of the sorted listing and 10% brand searches. Writes add a new item
+// and later delete it again, so the inventory stays the same size.
+public class HttpLoadTest {
+
+    private static final int WARMUP_SECONDS = 5;
+    private static final Pattern ENGINE_NUMBER = Pattern.compile("\"engineNumber\":\"([^\"]*)\"");
+    private static final Pattern NEXT = Pattern.compile("\"next\":\"([^\"]*)\"");
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "http://localhost:8080";
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int writePercent = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        String[] engineNumbers = knownEngineNumbers(client, url);
+        System.out.printf("%d engine numbers, %d connections, %d s warm-up + %d s, %d%% writes%n",
+                engineNumbers.length, connections, WARMUP_SECONDS, seconds, writePercent);
+
+        long start = System.nanoTime();
+        long measureFrom = start + WARMUP_SECONDS * 1_000_000_000L;
+        long measureUntil = measureFrom + seconds * 1_000_000_000L;
+        AtomicLong errors = new AtomicLong();
+        List<Worker> workers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < connections; i++) {
+                Worker worker = new Worker(i, client, url, engineNumbers, writePercent, measureFrom, measureUntil, errors);
+                workers.add(worker);
+                executor.execute(worker);
+            }
+        } // Waits for every worker
+
+        long[] latencies = merge(workers);
+        Arrays.sort(latencies);
+        System.out.printf("%d requests, %.0f requests/s, %d errors%n", latencies.length, latencies.length / (double) seconds, errors.get());
+        System.out.printf("p50 %s  p99 %s  p999 %s  max %s%n",
+                millis(percentile(latencies, 0.50)), millis(percentile(latencies, 0.99)),
+                millis(percentile(latencies, 0.999)), millis(latencies.length == 0 ? 0 : latencies[latencies.length - 1]));
+    }
+
+    // Page through the inventory once to get engine numbers to look up (at most 100,000)
+    private static String[] knownEngineNumbers(HttpClient client, String url) throws Exception {
+        List<String> engineNumbers = new ArrayList<>();
+        String after = null;
+        do {
+            String page = url + "/items?limit=1000" + (after == null ? "" : "&after=" + encode(after));
+            String body = client.send(HttpRequest.newBuilder(URI.create(page)).build(), HttpResponse.BodyHandlers.ofString()).body();
+            Matcher matcher = ENGINE_NUMBER.matcher(body);
+            while (matcher.find()) {
+                engineNumbers.add(matcher.group(1));
+            }
+            Matcher next = NEXT.matcher(body);
+            after = next.find() ? next.group(1) : null;
+        } while (after != null && engineNumbers.size() < 100_000);
+        if (engineNumbers.isEmpty()) {
+            throw new IllegalStateException("The inventory at " + url + " is empty");
+        }
+        return engineNumbers.toArray(new String[0]);
+    }
+
+    private static class Worker implements Runnable {
+        final int id;
+        final HttpClient client;
+        final String url;
+        final String[] engineNumbers;
+        final int writePercent;
+        final long measureFrom, measureUntil;
+        final AtomicLong errors;
+        final SplittableRandom random;
+        long[] latencies = new long[1024]; // Only this worker writes here, so no synchronization while running
+        int count;
+        final List<String> added = new ArrayList<>(); // Our own items that are still in the inventory
+        int nextItem;
+
+        Worker(int id, HttpClient client, String url, String[] engineNumbers, int writePercent,
+               long measureFrom, long measureUntil, AtomicLong errors) {
+            this.id = id;
+            this.client = client;
+            this.url = url;
+            this.engineNumbers = engineNumbers;
+            this.writePercent = writePercent;
+            this.measureFrom = measureFrom;
+            this.measureUntil = measureUntil;
+            this.errors = errors;
+            this.random = new SplittableRandom(id);
+        }
+
+        @Override
+        public void run() {
+            long now;
+            while ((now = System.nanoTime()) < measureUntil) {
+                HttpRequest request = nextRequest();
+                boolean ok;
+                try {
+                    int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    ok = status < 500;
+                } catch (Exception e) {
+                    ok = false;
+                }
+                long end = System.nanoTime();
+                if (!ok) {
+                    errors.incrementAndGet();
+                } else if (now >= measureFrom) {
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = end - now;
+                }
+            }
+            for (String engineNumber : added) {
+                try {
+                    client.send(delete(engineNumber), HttpResponse.BodyHandlers.discarding()); // Clean up
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                }
+            }
+        }
+
+        private HttpRequest nextRequest() {
+            int roll = random.nextInt(100);
+            if (roll < writePercent) {
+                if (!added.isEmpty() && random.nextBoolean()) {
+                    return delete(added.remove(added.size() - 1));
+                }
+                String engineNumber = "LT" + id + "-" + nextItem++;
+                added.add(engineNumber);
+                String json = "{\"dateEntered\":\"03/01/2023\",\"stockLabel\":\"New\",\"brand\":\"Honda\","
+                        + "\"engineNumber\":\"" + engineNumber + "\",\"status\":\"On-hand\"}";
+                return HttpRequest.newBuilder(URI.create(url + "/items"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(json))
+                        .build();
+            }
+
+            String engineNumber = engineNumbers[random.nextInt(engineNumbers.length)];
+            int read = random.nextInt(10);
+            String path;
+            if (read < 8) {
+                path = "/items/" + encode(engineNumber);
+            } else if (read == 8) {
+                path = "/items?limit=50&after=" + encode(engineNumber);
+            } else {
+                path = "/items?brand=" + InventoryDataGenerator.BRANDS[random.nextInt(InventoryDataGenerator.BRANDS.length)];
+            }
+            return HttpRequest.newBuilder(URI.create(url + path)).build();
+        }
+
+        private HttpRequest delete(String engineNumber) {
+            return HttpRequest.newBuilder(URI.create(url + "/items/" + encode(engineNumber))).DELETE().build();
+        }
+    }
+
+    private static long[] merge(List<Worker> workers) {
+        int total = 0;
+        for (Worker worker : workers) {
+            total += worker.count;
+        }
+        long[] all = new long[total];
+        int position = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, all, position, worker.count);
+            position += worker.count;
+        }
+        return all;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1; // Nearest-rank
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f ms", nanos / 1e6);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,242 @@
+package inventory.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+// The application classes live in the default package and keep their hot paths private, so the
+// benchmarks reach them through method handles. The handles are static finals, which the JIT
+// inlines like a direct call.
+// invoke() rather than invokeExact() so the erased handles can be called with the real argument types.
+final class Inventory {
+
+    private static final MethodHandle NEW_ITEM;
+    private static final MethodHandle NEW_REPOSITORY;
+    private static final MethodHandle LOAD_CSV;
+    private static final MethodHandle LOAD_CSV_PARALLEL;
+    private static final MethodHandle SAVE_CSV;
+    private static final MethodHandle BULK_LOAD;
+    private static final MethodHandle INSERT;
+    private static final MethodHandle DELETE;
+    private static final MethodHandle GET_ROOT;
+    private static final MethodHandle SET_ROOT;
+    private static final MethodHandle FIND_BY_ENGINE_NUMBER;
+    private static final MethodHandle FIND_BY_BRAND;
+    private static final MethodHandle SORTED_INVENTORY;
+    private static final MethodHandle SORTED_INVENTORY_AFTER;
+    private static final MethodHandle INVENTORY_WITH_PREFIX;
+    private static final MethodHandle COUNT_WITH_PREFIX;
+    private static final MethodHandle SELECT_BY_RANK;
+    private static final MethodHandle ENGINE_NUMBER;
+
+    static {
+        try {
+            Class<?> management = Class.forName("InventoryManagement");
+            Class<?> item = Class.forName("InventoryManagement$InventoryItem");
+            Class<?> treeNode = Class.forName("InventoryManagement$TreeNode");
+            Class<?> repository = Class.forName("InventoryRepository");
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(management, MethodHandles.lookup());
+
+            NEW_ITEM = erase(lookup.findConstructor(item,
+                    MethodType.methodType(void.class, String.class, String.class, String.class, String.class, String.class)));
+            NEW_REPOSITORY = erase(MethodHandles.publicLookup().findConstructor(repository,
+                    MethodType.methodType(void.class, String.class)));
+            LOAD_CSV = erase(MethodHandles.publicLookup().findVirtual(repository, "loadInventoryFromCSV",
+                    MethodType.methodType(List.class)));
+            LOAD_CSV_PARALLEL = erase(MethodHandles.publicLookup().findVirtual(repository, "loadInventoryFromCSVParallel",
+                    MethodType.methodType(List.class)));
+            SAVE_CSV = erase(MethodHandles.publicLookup().findVirtual(repository, "saveInventoryToCSV",
+                    MethodType.methodType(void.class, String.class, Iterable.class)));
+            BULK_LOAD = erase(lookup.findStatic(management, "bulkLoadInventory",
+                    MethodType.methodType(void.class, List.class)));
+            INSERT = erase(lookup.findStatic(management, "insertIntoAVL",
+                    MethodType.methodType(treeNode, treeNode, item)));
+            DELETE = erase(lookup.findStatic(management, "deleteFromAVL",
+                    MethodType.methodType(treeNode, treeNode, String.class)));
+            GET_ROOT = erase(lookup.findStaticGetter(management, "root", treeNode));
+            SET_ROOT = erase(lookup.findStaticSetter(management, "root", treeNode));
+            FIND_BY_ENGINE_NUMBER = erase(lookup.findStatic(management, "findItemByEngineNumber",
+                    MethodType.methodType(item, String.class)));
+            FIND_BY_BRAND = erase(lookup.findStatic(management, "findItemsByBrand",
+                    MethodType.methodType(List.class, String.class)));
+            SORTED_INVENTORY = erase(lookup.findStatic(management, "getSortedInventory",
+                    MethodType.methodType(List.class)));
+            SORTED_INVENTORY_AFTER = erase(lookup.findStatic(management, "sortedInventoryAfter",
+                    MethodType.methodType(Iterable.class, String.class)));
+            INVENTORY_WITH_PREFIX = erase(lookup.findStatic(management, "inventoryWithPrefix",
+                    MethodType.methodType(Iterable.class, String.class)));
+            COUNT_WITH_PREFIX = lookup.findStatic(management, "countWithPrefix",
+                    MethodType.methodType(int.class, String.class));
+            SELECT_BY_RANK = erase(lookup.findStatic(management, "selectByRank",
+                    MethodType.methodType(item, int.class)));
+            ENGINE_NUMBER = erase(lookup.findGetter(item, "engineNumber", String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Inventory() {
+    }
+
+    // Every parameter and return type becomes Object, so callers don't need the application classes
+    private static MethodHandle erase(MethodHandle handle) {
+        return handle.asType(handle.type().erase());
+    }
+
+    static Object newItem(String dateEntered, String stockLabel, String brand, String engineNumber, String status) {
+        try {
+            return NEW_ITEM.invoke(dateEntered, stockLabel, brand, engineNumber, status);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newRepository(String csvFilePath) {
+        try {
+            return NEW_REPOSITORY.invoke(csvFilePath);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> loadCsv(Object repository) {
+        try {
+            return (List<?>) LOAD_CSV.invoke(repository);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> loadCsvParallel(Object repository) {
+        try {
+            return (List<?>) LOAD_CSV_PARALLEL.invoke(repository);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void saveCsv(Object repository, String filePath, Iterable<?> items) {
+        try {
+            SAVE_CSV.invoke(repository, filePath, items);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // Replaces the tree, the map and the secondary indexes
+    static void bulkLoad(List<?> items) {
+        try {
+            BULK_LOAD.invoke(items);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object insert(Object node, Object item) {
+        try {
+            return INSERT.invoke(node, item);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object delete(Object node, String engineNumber) {
+        try {
+            return DELETE.invoke(node, engineNumber);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object root() {
+        try {
+            return GET_ROOT.invoke();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void setRoot(Object node) {
+        try {
+            SET_ROOT.invoke(node);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object findByEngineNumber(String engineNumber) {
+        try {
+            return FIND_BY_ENGINE_NUMBER.invoke(engineNumber);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> findByBrand(String brand) {
+        try {
+            return (List<?>) FIND_BY_BRAND.invoke(brand);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> sortedInventory() {
+        try {
+            return (List<?>) SORTED_INVENTORY.invoke();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // Lazy in-order walk of the tree, starting after an engine number (null for the start)
+    static Iterable<?> sortedInventoryAfter(String startAfter) {
+        try {
+            return (Iterable<?>) SORTED_INVENTORY_AFTER.invoke(startAfter);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Iterable<?> inventoryWithPrefix(String prefix) {
+        try {
+            return (Iterable<?>) INVENTORY_WITH_PREFIX.invoke(prefix);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static int countWithPrefix(String prefix) {
+        try {
+            return (int) COUNT_WITH_PREFIX.invoke(prefix);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object selectByRank(int rank) {
+        try {
+            return SELECT_BY_RANK.invoke(rank);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static String engineNumber(Object item) {
+        try {
+            return (String) ENGINE_NUMBER.invoke(item);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        if (e instanceof Error error) {
+            throw error;
+        }
+        throw new IllegalStateException(e);
+    }
+}
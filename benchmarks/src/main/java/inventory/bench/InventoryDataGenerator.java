@@ -0,0 +1,83 @@
+package inventory.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.SplittableRandom;
+
+// Writes inventory CSV files shaped like "MotorPH Inventory Data2.csv": same header, same brands, stock
+// labels and statuses in roughly the same proportions, dates in Feb/Mar 2023 and 10-character engine numbers.
+final class InventoryDataGenerator {
+
+    static final String[] BRANDS = {"Honda", "Kymco", "Yamaha", "Kawasaki", "Suzuki"};
+    private static final int[] BRAND_WEIGHTS = {27, 25, 19, 17, 12}; // Percent, from the real file
+
+    private static final int NEW_PERCENT = 40; // The rest are "Old"
+    private static final int ON_HAND_PERCENT = 44; // The rest are "Sold"
+    private static final String ENGINE_CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private InventoryDataGenerator() {
+    }
+
+    // Generated files are kept between runs because the large ones take a while to write
+    static Path inventoryFile(int rows) throws IOException {
+        Path directory = Paths.get(System.getProperty("java.io.tmpdir"), "motorph-bench");
+        Files.createDirectories(directory);
+        Path file = directory.resolve("inventory-" + rows + ".csv");
+        if (!Files.exists(file)) {
+            Path temp = directory.resolve("inventory-" + rows + ".csv.tmp");
+            write(temp, rows, 42);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    static void write(Path file, int rows, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("Date Entered,Stock Label,Brand,Engine Number,Status");
+            writer.newLine();
+            for (int i = 0; i < rows; i++) {
+                writer.write(date(random));
+                writer.write(',');
+                writer.write(random.nextInt(100) < NEW_PERCENT ? "New" : "Old");
+                writer.write(',');
+                writer.write(brand(random));
+                writer.write(',');
+                writer.write(engineNumber(random));
+                writer.write(',');
+                writer.write(random.nextInt(100) < ON_HAND_PERCENT ? "On-hand" : "Sold");
+                writer.newLine();
+            }
+        }
+    }
+
+    static String brand(SplittableRandom random) {
+        int roll = random.nextInt(100);
+        for (int i = 0; i < BRANDS.length; i++) {
+            roll -= BRAND_WEIGHTS[i];
+            if (roll < 0) {
+                return BRANDS[i];
+            }
+        }
+        return BRANDS[BRANDS.length - 1];
+    }
+
+    static String engineNumber(SplittableRandom random) {
+        char[] chars = new char[10];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = ENGINE_CHARS.charAt(random.nextInt(ENGINE_CHARS.length()));
+        }
+        return new String(chars);
+    }
+
+    private static String date(SplittableRandom random) {
+        int month = 2 + random.nextInt(2);
+        int day = 1 + random.nextInt(month == 2 ? 28 : 31);
+        return String.format("%02d/%02d/2023", month, day);
+    }
+}
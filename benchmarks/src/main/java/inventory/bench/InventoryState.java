@@ -0,0 +1,40 @@
+package inventory.bench;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// A generated inventory of 'rows' items, loaded into the tree, the map and the indexes
+@State(Scope.Benchmark)
+public class InventoryState {
+
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    String csvFile;
+    Object repository;
+    List<?> items; // In file order
+    String[] engineNumbers; // Engine numbers that are in the inventory, in random order
+    int size; // Items in the tree, after duplicates are dropped
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        csvFile = InventoryDataGenerator.inventoryFile(rows).toString();
+        repository = Inventory.newRepository(csvFile);
+        items = Inventory.loadCsvParallel(repository);
+        Inventory.bulkLoad(items);
+
+        List<?> sorted = Inventory.sortedInventory();
+        size = sorted.size();
+        SplittableRandom random = new SplittableRandom(7);
+        engineNumbers = new String[Integer.highestOneBit(Math.min(sorted.size(), 1 << 16))]; // A power of two, for cheap wrap-around
+        for (int i = 0; i < engineNumbers.length; i++) {
+            engineNumbers[i] = Inventory.engineNumber(sorted.get(random.nextInt(sorted.size())));
+        }
+    }
+}
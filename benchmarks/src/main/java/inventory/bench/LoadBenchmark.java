@@ -0,0 +1,37 @@
+package inventory.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Reading the CSV file and building the tree and map from it
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class LoadBenchmark {
+
+    @Benchmark
+    public List<?> loadCsv(InventoryState state) {
+        return Inventory.loadCsv(state.repository);
+    }
+
+    @Benchmark
+    public List<?> loadCsvParallel(InventoryState state) {
+        return Inventory.loadCsvParallel(state.repository);
+    }
+
+    // The whole startup path: parse, then build the tree and map in one pass
+    @Benchmark
+    public Object loadAndBulkBuild(InventoryState state) {
+        Inventory.bulkLoad(Inventory.loadCsvParallel(state.repository));
+        return Inventory.root();
+    }
+}
@@ -0,0 +1,71 @@
+package inventory.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Full saves, like deleteItem does without the journal, and paging through the sorted listing
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SaveBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Output {
+        Path file;
+        int nextPage;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = Files.createTempFile("motorph-save", ".csv");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Copies the tree into a list first, then writes it
+    @Benchmark
+    public void fullSave(InventoryState state, Output output) {
+        Inventory.saveCsv(state.repository, output.file.toString(), Inventory.sortedInventory());
+    }
+
+    // Streams rows from the tree cursor straight to the writer, as saveInventoryToCSV now does
+    @Benchmark
+    public void fullSaveStreaming(InventoryState state, Output output) {
+        Inventory.saveCsv(state.repository, output.file.toString(), Inventory.sortedInventoryAfter(null));
+    }
+
+    // One page of the sorted listing from a random starting point
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Object sortedPage(InventoryState state, Output output) {
+        Object last = null;
+        int count = 0;
+        for (Object item : Inventory.sortedInventoryAfter(state.engineNumbers[output.nextPage++ & (state.engineNumbers.length - 1)])) {
+            last = item;
+            if (++count == 50) {
+                break;
+            }
+        }
+        return last;
+    }
+}
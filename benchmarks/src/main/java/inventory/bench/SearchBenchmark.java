@@ -0,0 +1,64 @@
+package inventory.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Lookups by engine number, engine number prefix, position and brand, without the console output
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SearchBenchmark {
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public Object pointLookup(InventoryState state, Cursor cursor) {
+        return Inventory.findByEngineNumber(state.engineNumbers[cursor.next++ & (state.engineNumbers.length - 1)]);
+    }
+
+    @Benchmark
+    public Object pointLookupMiss(InventoryState state, Cursor cursor) {
+        return Inventory.findByEngineNumber("#" + (cursor.next++ & 1023)); // Never a valid engine number
+    }
+
+    // Every item whose engine number starts with the first 3 characters of a known one
+    @Benchmark
+    public Object prefixSearch(InventoryState state, Cursor cursor) {
+        Object last = null;
+        for (Object item : Inventory.inventoryWithPrefix(state.engineNumbers[cursor.next++ & (state.engineNumbers.length - 1)].substring(0, 3))) {
+            last = item;
+        }
+        return last;
+    }
+
+    // Same prefixes, counted from the subtree sizes without visiting the items
+    @Benchmark
+    public int prefixCount(InventoryState state, Cursor cursor) {
+        return Inventory.countWithPrefix(state.engineNumbers[cursor.next++ & (state.engineNumbers.length - 1)].substring(0, 3));
+    }
+
+    @Benchmark
+    public Object selectByPosition(InventoryState state, Cursor cursor) {
+        return Inventory.selectByRank((int) ((cursor.next++ * 0x9E3779B9L & 0xFFFFFFFFL) % state.size));
+    }
+
+    // One brand per call, cycling through all of them; returns every matching item
+    @Benchmark
+    public List<?> brandSearch(InventoryState state, Cursor cursor) {
+        return Inventory.findByBrand(InventoryDataGenerator.BRANDS[cursor.next++ % InventoryDataGenerator.BRANDS.length]);
+    }
+}
@@ -0,0 +1,58 @@
+package inventory.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Building the tree and changing it one item at a time
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TreeBenchmark {
+
+    // Inserting every item with insertIntoAVL, the way startup used to work
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object bulkInsertOneByOne(InventoryState state) {
+        Object node = null;
+        for (Object item : state.items) {
+            node = Inventory.insert(node, item);
+        }
+        return node;
+    }
+
+    // bulkLoadInventory: sort, drop duplicates, build balanced, fill the map and indexes
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object bulkLoad(InventoryState state) {
+        Inventory.bulkLoad(state.items);
+        return Inventory.root();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    // Delete an existing item and put it back, so the tree stays the same size between calls
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Object deleteAndReinsert(InventoryState state, Cursor cursor) {
+        String engineNumber = state.engineNumbers[cursor.next++ & (state.engineNumbers.length - 1)];
+        Object item = Inventory.findByEngineNumber(engineNumber);
+        Object node = Inventory.delete(Inventory.root(), engineNumber);
+        node = Inventory.insert(node, item);
+        Inventory.setRoot(node);
+        return node;
+    }
+}
@@ -0,0 +1,36 @@
+import java.util.*;
+
+// Secondary index from brand to the engine numbers of that brand.
+// Brands are case-folded the same way equalsIgnoreCase compares them, and each brand keeps its
+// engine numbers in a TreeSet so a lookup comes back already in engine-number order.
+public class BrandIndex {
+
+    private final HashMap<String, TreeSet<String>> engineNumbersByBrand = new HashMap<>();
+
+    // Add an item under its brand
+    public void add(InventoryManagement.InventoryItem item) {
+        engineNumbersByBrand.computeIfAbsent(foldCase(item.brand), brand -> new TreeSet<>()).add(item.engineNumber);
+    }
+
+    // Remove an item from its brand, dropping the brand once it has no items left
+    public void remove(InventoryManagement.InventoryItem item) {
+        String brand = foldCase(item.brand);
+        TreeSet<String> engineNumbers = engineNumbersByBrand.get(brand);
+        if (engineNumbers != null && engineNumbers.remove(item.engineNumber) && engineNumbers.isEmpty()) {
+            engineNumbersByBrand.remove(brand);
+        }
+    }
+
+    // Engine numbers of every item with this brand (ignoring case), sorted
+    public SortedSet<String> engineNumbers(String brand) {
+        TreeSet<String> engineNumbers = engineNumbersByBrand.get(foldCase(brand));
+        return engineNumbers == null ? Collections.emptySortedSet() : Collections.unmodifiableSortedSet(engineNumbers);
+    }
+
+    // Two strings fold to the same key exactly when equalsIgnoreCase says they are equal
+    static String foldCase(String value) {
+        StringBuilder folded = new StringBuilder(value.length());
+        value.codePoints().forEach(codePoint -> folded.appendCodePoint(Character.toLowerCase(Character.toUpperCase(codePoint))));
+        return folded.toString();
+    }
+}
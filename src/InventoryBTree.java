@@ -0,0 +1,749 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+// Inventory kept on disk in a B+tree keyed by engine number, for inventories too big for the heap.
+// Only the pages in a bounded LRU cache are in memory, so the heap stays the same size however
+// many items there are. Lookups, adds and deletes read O(log n) pages, and a sorted listing reads
+// the leaves one after another.
+//
+// File layout, one 4 KB page after another (page numbers are ints, so up to 8 TB):
+//   page 0   header: magic "MPHB", version, page size, root page, page count, first free page,
+//            item count (long), and an "open" flag that is set while there are unsaved changes
+//   leaf     type 1, entry count, next leaf, then per item its engine number, date entered,
+//            stock label, brand and status, each a 2-byte length plus UTF-8 bytes
+//   internal type 2, key count, first child, then per key the key and the child to its right
+//   free     type 0, next free page
+//
+// Changes are made in the cache and written back when a page is evicted or on flush(). Call flush()
+// before telling anyone a change is saved. The first change after a flush starts a rollback journal
+// next to the file ("<file>-journal") and sets the "open" flag on disk. Before a page is overwritten
+// for the first time since the flush, its old contents go to the journal, and the journal is forced
+// to disk before the page is written. flush() writes the pages, clears the flag and deletes the journal.
+//
+// If the program dies in between, open() copies the journal's pages back, so the file is just as it
+// was at the last flush and the changes since then are lost. A file with the "open" flag but no
+// journal (copied without it, say) may be half-written, so open() refuses it. To recover, restore it
+// together with its journal, or delete it and let it be built again from the CSV file.
+//
+// Journal layout: magic "MPHJ", the page count at the flush and a CRC32C of those 8 bytes, then per
+// saved page its number, its old contents and a CRC32C of both. A torn last record was never used.
+//
+// All methods are synchronized. Iterators read a leaf at a time and find the next leaf again by key,
+// so they keep working (and see the changes) if the tree changes while they are in use.
+public class InventoryBTree implements Closeable {
+
+    static final int PAGE_SIZE = 4096;
+    private static final int MAGIC = 0x4D504842; // "MPHB"
+    private static final int VERSION = 1;
+    private static final int NODE_HEADER_SIZE = 7; // Type, count, next leaf or first child
+    private static final int CAPACITY = PAGE_SIZE - NODE_HEADER_SIZE;
+    private static final int MAX_ENTRY_SIZE = CAPACITY / 8; // Small enough that both halves of a split fit
+    private static final int MIN_CACHE_PAGES = 64; // Enough for every page one change has in hand
+    private static final byte FREE = 0, LEAF = 1, INTERNAL = 2;
+    private static final int JOURNAL_MAGIC = 0x4D50484A; // "MPHJ"
+    private static final int JOURNAL_HEADER_SIZE = 12;
+    private static final int JOURNAL_RECORD_SIZE = 4 + PAGE_SIZE + 4;
+
+    // A page, decoded. Leaves have items, internal nodes have children (one more than keys).
+    private static final class Node {
+        final int page;
+        final boolean leaf;
+        final ArrayList<String> keys = new ArrayList<>();
+        final ArrayList<InventoryManagement.InventoryItem> items;
+        final ArrayList<Integer> children;
+        int next; // Next leaf, 0 for the last one
+        int bytes; // Size of the entries when written
+        boolean dirty;
+
+        Node(int page, boolean leaf) {
+            this.page = page;
+            this.leaf = leaf;
+            this.items = leaf ? new ArrayList<>() : null;
+            this.children = leaf ? null : new ArrayList<>();
+        }
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final LinkedHashMap<Integer, Node> cache; // In access order, so the eldest is the least recently used
+    private final int cachePages;
+    private int rootPage;
+    private int pageCount;
+    private int firstFreePage; // 0 if there are none
+    private long itemCount;
+    private long pageReads, pageWrites;
+    private boolean markedOpen; // The header on disk says there are unsaved changes
+    private final Path journalPath;
+    private FileChannel journal; // Open from the first change after a flush until the next flush
+    private final BitSet journaled = new BitSet(); // Pages whose old contents are in the journal
+    private int journalPageCount; // Pages from here on didn't exist at the last flush, so there is nothing to save
+    private long journalSize;
+    private boolean journalForced;
+
+    private InventoryBTree(Path path, FileChannel channel, int cachePages) {
+        this.path = path;
+        this.journalPath = path.resolveSibling(path.getFileName() + "-journal");
+        this.channel = channel;
+        this.cachePages = cachePages;
+        this.cache = new LinkedHashMap<>(cachePages * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Node> eldest) {
+                if (size() <= InventoryBTree.this.cachePages) {
+                    return false;
+                }
+                if (eldest.getValue().dirty) {
+                    try {
+                        writeNode(eldest.getValue()); // Write back before it is dropped
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    // Open a B+tree file, or create an empty one if there is no file yet. At most cachePages pages are kept in memory.
+    public static InventoryBTree open(Path path, int cachePages) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            InventoryBTree tree = new InventoryBTree(path, channel, Math.max(cachePages, MIN_CACHE_PAGES));
+            if (channel.size() == 0) {
+                Files.deleteIfExists(tree.journalPath); // Left over from a file that was deleted, not for this one
+                tree.pageCount = 1; // The header
+                tree.markedOpen = true; // Nothing on disk yet
+                Node root = tree.newNode(true);
+                tree.rootPage = root.page;
+                tree.flush();
+            } else {
+                tree.rollBack();
+                tree.readHeader();
+            }
+            return tree;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer header = readPage(0);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not an inventory B+tree: " + path);
+        }
+        if (header.getInt(4) != VERSION || header.getInt(8) != PAGE_SIZE) {
+            throw new IOException("Unsupported inventory B+tree version " + header.getInt(4) + ": " + path);
+        }
+        if (header.getInt(32) != 0) {
+            throw new IOException("Inventory B+tree was being changed when the program stopped and its journal is missing, "
+                    + "so it may be damaged. Restore it with its journal or build it again: " + path);
+        }
+        rootPage = header.getInt(12);
+        pageCount = header.getInt(16);
+        firstFreePage = header.getInt(20);
+        itemCount = header.getLong(24);
+        if (rootPage <= 0 || rootPage >= pageCount || (long) pageCount * PAGE_SIZE > channel.size()) {
+            throw new IOException("Inventory B+tree is truncated or damaged: " + path);
+        }
+    }
+
+    private void writeHeader(boolean open) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(PAGE_SIZE);
+        header.putInt(rootPage);
+        header.putInt(pageCount);
+        header.putInt(firstFreePage);
+        header.putLong(itemCount);
+        header.putInt(open ? 1 : 0);
+        header.clear();
+        writePage(0, header);
+    }
+
+    // --------------------------------------------------------------
+    //  Operations
+    // --------------------------------------------------------------
+
+    public synchronized long size() {
+        return itemCount;
+    }
+
+    public synchronized InventoryManagement.InventoryItem get(String engineNumber) throws IOException {
+        Node node = node(rootPage);
+        while (!node.leaf) {
+            node = node(node.children.get(childIndex(node, engineNumber)));
+        }
+        int index = Collections.binarySearch(node.keys, engineNumber);
+        return index < 0 ? null : node.items.get(index);
+    }
+
+    // Add an item. Returns false (and changes nothing) if the engine number is already taken.
+    public synchronized boolean add(InventoryManagement.InventoryItem item) throws IOException {
+        int size = entrySize(item);
+        if (size > MAX_ENTRY_SIZE) {
+            throw new IllegalArgumentException("Item is too long to store on disk: " + item.engineNumber);
+        }
+
+        // Walk down, remembering the way for the splits
+        List<Node> pathNodes = new ArrayList<>();
+        List<Integer> pathIndexes = new ArrayList<>();
+        Node node = node(rootPage);
+        while (!node.leaf) {
+            int index = childIndex(node, item.engineNumber);
+            pathNodes.add(node);
+            pathIndexes.add(index);
+            node = node(node.children.get(index));
+        }
+        int index = Collections.binarySearch(node.keys, item.engineNumber);
+        if (index >= 0) {
+            return false; // Duplicate keys not allowed
+        }
+
+        startChange();
+        index = -index - 1;
+        node.keys.add(index, item.engineNumber);
+        node.items.add(index, item);
+        node.bytes += size;
+        itemCount++;
+        markDirty(node);
+        splitFullNodes(pathNodes, pathIndexes, node);
+        return true;
+    }
+
+    // Replace an item with a changed one that has the same engine number. Returns the old item, or null if there was none.
+    public synchronized InventoryManagement.InventoryItem update(InventoryManagement.InventoryItem item) throws IOException {
+        int size = entrySize(item);
+        if (size > MAX_ENTRY_SIZE) {
+            throw new IllegalArgumentException("Item is too long to store on disk: " + item.engineNumber);
+        }
+
+        List<Node> pathNodes = new ArrayList<>();
+        List<Integer> pathIndexes = new ArrayList<>();
+        Node node = node(rootPage);
+        while (!node.leaf) {
+            int index = childIndex(node, item.engineNumber);
+            pathNodes.add(node);
+            pathIndexes.add(index);
+            node = node(node.children.get(index));
+        }
+        int index = Collections.binarySearch(node.keys, item.engineNumber);
+        if (index < 0) {
+            return null;
+        }
+
+        startChange();
+        InventoryManagement.InventoryItem previous = node.items.set(index, item);
+        node.bytes += size - entrySize(previous);
+        markDirty(node);
+        splitFullNodes(pathNodes, pathIndexes, node); // Only if it grew past the page. One that shrank is left small.
+        return previous;
+    }
+
+    // Split full nodes, from node up along the path to it. A split root makes the tree one level taller.
+    private void splitFullNodes(List<Node> pathNodes, List<Integer> pathIndexes, Node node) throws IOException {
+        for (int level = pathNodes.size() - 1; node.bytes > CAPACITY; level--) {
+            Node right = newNode(node.leaf);
+            String separator = split(node, right);
+            if (level < 0) {
+                Node newRoot = newNode(false);
+                newRoot.children.add(node.page);
+                newRoot.keys.add(separator);
+                newRoot.children.add(right.page);
+                newRoot.bytes = keySize(separator);
+                markDirty(newRoot);
+                rootPage = newRoot.page;
+                break;
+            }
+            Node parent = pathNodes.get(level);
+            int childIndex = pathIndexes.get(level);
+            parent.keys.add(childIndex, separator);
+            parent.children.add(childIndex + 1, right.page);
+            parent.bytes += keySize(separator);
+            markDirty(parent);
+            node = parent;
+        }
+    }
+
+    // Delete an item. Returns the deleted item, or null if there was none.
+    public synchronized InventoryManagement.InventoryItem delete(String engineNumber) throws IOException {
+        List<Node> pathNodes = new ArrayList<>();
+        List<Integer> pathIndexes = new ArrayList<>();
+        Node node = node(rootPage);
+        while (!node.leaf) {
+            int index = childIndex(node, engineNumber);
+            pathNodes.add(node);
+            pathIndexes.add(index);
+            node = node(node.children.get(index));
+        }
+        int index = Collections.binarySearch(node.keys, engineNumber);
+        if (index < 0) {
+            return null;
+        }
+
+        startChange();
+        InventoryManagement.InventoryItem removed = node.items.remove(index);
+        node.keys.remove(index);
+        node.bytes -= entrySize(removed);
+        itemCount--;
+        markDirty(node);
+
+        // Merge nodes that got less than a quarter full into a neighbour, from the leaf up, while they fit.
+        // Without borrowing from neighbours that are too full to merge, so a node can stay small.
+        for (int level = pathNodes.size() - 1; level >= 0 && node.bytes < CAPACITY / 4; level--) {
+            Node parent = pathNodes.get(level);
+            int childIndex = pathIndexes.get(level);
+            int leftIndex = childIndex > 0 ? childIndex - 1 : childIndex; // Merge with the left neighbour if there is one
+            if (parent.children.size() < 2) {
+                break;
+            }
+            Node left = leftIndex == childIndex ? node : node(parent.children.get(leftIndex));
+            Node right = leftIndex == childIndex ? node(parent.children.get(childIndex + 1)) : node;
+            String separator = parent.keys.get(leftIndex);
+            if (!merge(left, separator, right)) {
+                break;
+            }
+            parent.keys.remove(leftIndex);
+            parent.children.remove(leftIndex + 1);
+            parent.bytes -= keySize(separator);
+            markDirty(parent);
+            freeNode(right);
+            node = parent;
+        }
+
+        // An internal root with a single child isn't needed any more
+        Node root = node(rootPage);
+        while (!root.leaf && root.keys.isEmpty()) {
+            rootPage = root.children.get(0);
+            freeNode(root);
+            root = node(rootPage);
+        }
+        return removed;
+    }
+
+    // The items with from < engine number < to (from <= engine number if includeFrom), in order.
+    // Either end can be null for no limit.
+    public Iterable<InventoryManagement.InventoryItem> range(String from, boolean includeFrom, String to) {
+        return () -> new RangeIterator(from, includeFrom, to);
+    }
+
+    // Write every changed page and then the header, waiting for the disk after each
+    public synchronized void flush() throws IOException {
+        if (!markedOpen) {
+            return; // Nothing changed since the last flush
+        }
+        for (Node node : cache.values()) {
+            if (node.dirty) {
+                writeNode(node);
+            }
+        }
+        channel.force(false);
+        writeHeader(false); // Only once the pages are on disk
+        channel.force(false);
+        markedOpen = false;
+        if (journal != null) { // Everything is saved, so the old pages aren't needed any more
+            journal.close();
+            journal = null;
+            Files.delete(journalPath);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            flush(); // Leaves the file ready to be opened again
+        } finally {
+            if (journal != null) {
+                journal.close(); // Flushing failed, the journal stays for the next open()
+            }
+            channel.close();
+        }
+    }
+
+    // Pages read from and written to the file since it was opened, to see how well the cache works
+    public synchronized long pageReads() {
+        return pageReads;
+    }
+
+    public synchronized long pageWrites() {
+        return pageWrites;
+    }
+
+    // Levels from the root down to the leaves, 1 when the root is a leaf
+    synchronized int height() throws IOException {
+        int height = 1;
+        for (Node node = node(rootPage); !node.leaf; node = node(node.children.get(0))) {
+            height++;
+        }
+        return height;
+    }
+
+    // --------------------------------------------------------------
+    //  Nodes
+    // --------------------------------------------------------------
+
+    // Index of the child whose subtree would hold this engine number: keys[i] is the smallest key under children[i + 1]
+    private static int childIndex(Node node, String engineNumber) {
+        int low = 0, high = node.keys.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (node.keys.get(middle).compareTo(engineNumber) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Move the upper half of a full node (by size) into the empty node 'right'. Returns the key for the parent.
+    private String split(Node node, Node right) {
+        int half = node.bytes / 2, leftBytes = 0, index = 0;
+        if (node.leaf) {
+            while (leftBytes < half) {
+                leftBytes += entrySize(node.items.get(index++));
+            }
+            right.keys.addAll(node.keys.subList(index, node.keys.size()));
+            right.items.addAll(node.items.subList(index, node.items.size()));
+            node.keys.subList(index, node.keys.size()).clear();
+            node.items.subList(index, node.items.size()).clear();
+            right.bytes = node.bytes - leftBytes;
+            node.bytes = leftBytes;
+            right.next = node.next;
+            node.next = right.page;
+            markDirty(node);
+            markDirty(right);
+            return right.keys.get(0);
+        }
+
+        // Internal: the middle key moves up to the parent instead of being copied
+        while (leftBytes < half) {
+            leftBytes += keySize(node.keys.get(index++));
+        }
+        int middle = index - 1;
+        String separator = node.keys.get(middle);
+        right.keys.addAll(node.keys.subList(middle + 1, node.keys.size()));
+        right.children.addAll(node.children.subList(middle + 1, node.children.size()));
+        node.keys.subList(middle, node.keys.size()).clear();
+        node.children.subList(middle + 1, node.children.size()).clear();
+        right.bytes = node.bytes - leftBytes;
+        node.bytes = leftBytes - keySize(separator);
+        markDirty(node);
+        markDirty(right);
+        return separator;
+    }
+
+    // Move everything from 'right' into its left neighbour if it all fits in one page. Returns false if it doesn't.
+    private boolean merge(Node left, String separator, Node right) {
+        if (left.leaf) {
+            if (left.bytes + right.bytes > CAPACITY) {
+                return false;
+            }
+            left.keys.addAll(right.keys);
+            left.items.addAll(right.items);
+            left.bytes += right.bytes;
+            left.next = right.next;
+        } else {
+            if (left.bytes + keySize(separator) + right.bytes > CAPACITY) {
+                return false;
+            }
+            left.keys.add(separator); // The key between them comes back down
+            left.keys.addAll(right.keys);
+            left.children.addAll(right.children);
+            left.bytes += keySize(separator) + right.bytes;
+        }
+        markDirty(left);
+        return true;
+    }
+
+    private Node node(int page) throws IOException {
+        Node node = cache.get(page);
+        if (node == null) {
+            node = readNode(page);
+            cache.put(page, node);
+        }
+        return node;
+    }
+
+    // Start the journal and mark the file as being changed, before the first page of a change is written
+    private void startChange() throws IOException {
+        if (!markedOpen) {
+            journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE);
+            header.putInt(JOURNAL_MAGIC);
+            header.putInt(pageCount);
+            header.putInt(checksum(header, 8));
+            header.clear();
+            writeFully(journal, header, 0);
+            journalSize = JOURNAL_HEADER_SIZE;
+            journalPageCount = pageCount;
+            journaled.clear();
+            journalForced = false;
+
+            writeHeader(true); // Its old contents go to the journal first, like any other page
+            channel.force(false);
+            markedOpen = true;
+        }
+    }
+
+    // Copy a page's contents as they were at the last flush to the journal
+    private void saveToJournal(int page) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(JOURNAL_RECORD_SIZE);
+        record.putInt(page);
+        record.put(readPage(page));
+        record.putInt(checksum(record, 4 + PAGE_SIZE));
+        record.clear();
+        writeFully(journal, record, journalSize);
+        journalSize += JOURNAL_RECORD_SIZE;
+        journaled.set(page);
+        journalForced = false;
+    }
+
+    // Put back the pages in a journal left by a change that never got flushed, so the file is as it was
+    // at the last flush. A record that is cut short or doesn't match its checksum was still being written,
+    // and its page wasn't touched yet, so it and anything after it are skipped.
+    private void rollBack() throws IOException {
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+        try (FileChannel saved = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE);
+            if (readFully(saved, header, 0) && header.getInt(0) == JOURNAL_MAGIC && header.getInt(8) == checksum(header, 8)) {
+                ByteBuffer record = ByteBuffer.allocate(JOURNAL_RECORD_SIZE);
+                for (long position = JOURNAL_HEADER_SIZE; readFully(saved, record, position); position += JOURNAL_RECORD_SIZE) {
+                    if (record.getInt(4 + PAGE_SIZE) != checksum(record, 4 + PAGE_SIZE)) {
+                        break;
+                    }
+                    writePage(record.getInt(0), record.slice(4, PAGE_SIZE));
+                    record.clear();
+                }
+                channel.truncate((long) header.getInt(4) * PAGE_SIZE); // Pages added since the flush
+                channel.force(false);
+            }
+            // Without a whole header nothing was written to the file yet, so there is nothing to put back
+        }
+        Files.delete(journalPath);
+    }
+
+    // CRC32C of the first length bytes of a buffer
+    private static int checksum(ByteBuffer buffer, int length) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(buffer.array(), 0, length);
+        return (int) checksum.getValue();
+    }
+
+    // Put a changed node (back) in the cache, so it is written before it is dropped
+    private void markDirty(Node node) {
+        node.dirty = true;
+        cache.put(node.page, node);
+    }
+
+    private Node newNode(boolean leaf) throws IOException {
+        int page;
+        if (firstFreePage != 0) {
+            page = firstFreePage;
+            firstFreePage = readPage(page).getInt(3);
+        } else {
+            page = pageCount++;
+        }
+        Node node = new Node(page, leaf);
+        markDirty(node);
+        return node;
+    }
+
+    private void freeNode(Node node) throws IOException {
+        cache.remove(node.page);
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        buffer.put(FREE);
+        buffer.putShort((short) 0);
+        buffer.putInt(firstFreePage);
+        buffer.clear();
+        writePage(node.page, buffer);
+        firstFreePage = node.page;
+    }
+
+    private Node readNode(int page) throws IOException {
+        ByteBuffer buffer = readPage(page);
+        byte type = buffer.get();
+        if (type != LEAF && type != INTERNAL) {
+            throw new IOException("Inventory B+tree page " + page + " is damaged: " + path);
+        }
+        Node node = new Node(page, type == LEAF);
+        int count = Short.toUnsignedInt(buffer.getShort());
+        if (node.leaf) {
+            node.next = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                String engineNumber = readString(buffer);
+                InventoryManagement.InventoryItem item = new InventoryManagement.InventoryItem(
+                        readString(buffer), readString(buffer), readString(buffer), engineNumber, readString(buffer));
+                node.keys.add(engineNumber);
+                node.items.add(item);
+            }
+        } else {
+            node.children.add(buffer.getInt());
+            for (int i = 0; i < count; i++) {
+                node.keys.add(readString(buffer));
+                node.children.add(buffer.getInt());
+            }
+        }
+        node.bytes = buffer.position() - NODE_HEADER_SIZE;
+        return node;
+    }
+
+    private void writeNode(Node node) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        buffer.put(node.leaf ? LEAF : INTERNAL);
+        buffer.putShort((short) node.keys.size());
+        if (node.leaf) {
+            buffer.putInt(node.next);
+            for (InventoryManagement.InventoryItem item : node.items) {
+                writeString(buffer, item.engineNumber);
+                writeString(buffer, item.dateEntered);
+                writeString(buffer, item.stockLabel);
+                writeString(buffer, item.brand);
+                writeString(buffer, item.status);
+            }
+        } else {
+            buffer.putInt(node.children.get(0));
+            for (int i = 0; i < node.keys.size(); i++) {
+                writeString(buffer, node.keys.get(i));
+                buffer.putInt(node.children.get(i + 1));
+            }
+        }
+        buffer.clear();
+        writePage(node.page, buffer);
+        node.dirty = false;
+    }
+
+    private ByteBuffer readPage(int page) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        if (!readFully(channel, buffer, (long) page * PAGE_SIZE)) {
+            throw new EOFException("Inventory B+tree page " + page + " is past the end of " + path);
+        }
+        pageReads++;
+        return buffer.flip();
+    }
+
+    private void writePage(int page, ByteBuffer buffer) throws IOException {
+        if (journal != null) {
+            if (page < journalPageCount && !journaled.get(page)) {
+                saveToJournal(page);
+            }
+            if (!journalForced) {
+                journal.force(false); // The old contents must be on disk before the page is overwritten
+                journalForced = true;
+            }
+        }
+        writeFully(channel, buffer, (long) page * PAGE_SIZE);
+        pageWrites++;
+    }
+
+    // Read until the buffer is full. Returns false if the file ends first.
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static int stringSize(String value) {
+        return 2 + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static int entrySize(InventoryManagement.InventoryItem item) {
+        return stringSize(item.engineNumber) + stringSize(item.dateEntered) + stringSize(item.stockLabel)
+                + stringSize(item.brand) + stringSize(item.status);
+    }
+
+    private static int keySize(String key) {
+        return stringSize(key) + 4; // The key and the child to its right
+    }
+
+    // --------------------------------------------------------------
+    //  Sorted iteration
+    // --------------------------------------------------------------
+
+    // The items of the leaf holding the first key after 'after' (or at it, if inclusive), from that key on
+    private synchronized List<InventoryManagement.InventoryItem> leafFrom(String after, boolean inclusive) throws IOException {
+        Node node = node(rootPage);
+        while (!node.leaf) {
+            node = node(node.children.get(after == null ? 0 : childIndex(node, after)));
+        }
+        while (true) {
+            int start = 0;
+            if (after != null) {
+                int index = Collections.binarySearch(node.keys, after);
+                start = index >= 0 ? (inclusive ? index : index + 1) : -index - 1;
+            }
+            if (start < node.items.size() || node.next == 0) {
+                return new ArrayList<>(node.items.subList(start, node.items.size()));
+            }
+            node = node(node.next); // Nothing left in this leaf (or it's empty), so it's the next one
+        }
+    }
+
+    private class RangeIterator implements Iterator<InventoryManagement.InventoryItem> {
+        private final String to;
+        private List<InventoryManagement.InventoryItem> leaf;
+        private int position;
+
+        RangeIterator(String from, boolean includeFrom, String to) {
+            this.to = to;
+            this.leaf = load(from, includeFrom);
+        }
+
+        private List<InventoryManagement.InventoryItem> load(String after, boolean inclusive) {
+            try {
+                return leafFrom(after, inclusive);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position == leaf.size() && !leaf.isEmpty()) {
+                // Find the next leaf by key, in case the tree changed since this one was read
+                leaf = load(leaf.get(leaf.size() - 1).engineNumber, false);
+                position = 0;
+            }
+            return position < leaf.size() && (to == null || leaf.get(position).engineNumber.compareTo(to) < 0);
+        }
+
+        @Override
+        public InventoryManagement.InventoryItem next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return leaf.get(position++);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+// One change to the inventory, from a diff of two snapshots (InventoryDiff) or the live feed (InventoryChangeFeed).
+// As a line of text:
+//   ADDED,<item>
+//   REMOVED,<item>
+//   STATUS_CHANGED,<item>,<old status>
+//   CHANGED,<item>,<old item>            (any other field changed, maybe the status too)
+public class InventoryChange {
+
+    public enum Type { ADDED, REMOVED, STATUS_CHANGED, CHANGED }
+
+    final Type type;
+    final InventoryManagement.InventoryItem before; // null when added
+    final InventoryManagement.InventoryItem after; // null when removed
+
+    private InventoryChange(Type type, InventoryManagement.InventoryItem before, InventoryManagement.InventoryItem after) {
+        this.type = type;
+        this.before = before;
+        this.after = after;
+    }
+
+    public static InventoryChange added(InventoryManagement.InventoryItem item) {
+        return new InventoryChange(Type.ADDED, null, item);
+    }
+
+    public static InventoryChange removed(InventoryManagement.InventoryItem item) {
+        return new InventoryChange(Type.REMOVED, item, null);
+    }
+
+    // What happened to an item with the same engine number, or null if nothing did
+    public static InventoryChange between(InventoryManagement.InventoryItem before, InventoryManagement.InventoryItem after) {
+        boolean sameOtherFields = before.dateEntered.equals(after.dateEntered)
+                && before.stockLabel.equals(after.stockLabel)
+                && before.brand.equals(after.brand);
+        if (!sameOtherFields) {
+            return new InventoryChange(Type.CHANGED, before, after);
+        }
+        return before.status.equals(after.status) ? null : new InventoryChange(Type.STATUS_CHANGED, before, after);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getEngineNumber() {
+        return after != null ? after.engineNumber : before.engineNumber;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case ADDED:
+                return type + "," + after;
+            case REMOVED:
+                return type + "," + before;
+            case STATUS_CHANGED:
+                return type + "," + after + "," + before.status;
+            default:
+                return type + "," + after + "," + before;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Live feed of inventory changes, in the order they are made, for code in the same program that keeps
+// something else in sync (another store, a search index, a remote system) instead of re-reading whole files.
+//
+//   try (InventoryChangeFeed.Subscription changes = InventoryManagement.changeFeed.subscribe(10_000)) {
+//       InventoryChange change = changes.poll(1, TimeUnit.SECONDS); // null if nothing happened
+//       ...
+//   }
+//
+// A change is only handed out once it is saved, and never if saving it failed. Changes still go out in
+// the order they were made: one that is saved early waits for the ones made before it.
+//
+// Each subscriber has its own bounded queue, and publishing never waits for one. A subscriber that falls
+// further behind than its queue holds is cut off: it gets what was queued, then poll throws. A feed with
+// a gap in it is worse than none, so it has to start again from a snapshot (InventoryDiff helps there).
+public class InventoryChangeFeed {
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ArrayDeque<PendingChange> pending = new ArrayDeque<>(); // Waiting for their saves, oldest first
+
+    private static class PendingChange {
+        final InventoryChange change;
+        final CompletableFuture<?> saved;
+
+        PendingChange(InventoryChange change, CompletableFuture<?> saved) {
+            this.change = change;
+            this.saved = saved;
+        }
+    }
+
+    public static class Subscription implements AutoCloseable {
+        private final InventoryChangeFeed feed;
+        private final BlockingQueue<InventoryChange> queue;
+        private volatile boolean cutOff;
+
+        private Subscription(InventoryChangeFeed feed, int capacity) {
+            this.feed = feed;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        // The next change, waiting up to timeout for one. Returns null if none came.
+        // Throws IllegalStateException once the queued changes run out after the subscriber was cut off.
+        public InventoryChange poll(long timeout, TimeUnit unit) throws InterruptedException {
+            InventoryChange change = queue.poll();
+            if (change == null && cutOff) {
+                throw new IllegalStateException("Fell too far behind the inventory change feed, changes were lost");
+            }
+            return change != null ? change : queue.poll(timeout, unit);
+        }
+
+        public boolean isCutOff() {
+            return cutOff;
+        }
+
+        @Override
+        public void close() {
+            feed.subscriptions.remove(this);
+        }
+    }
+
+    // Start getting changes from now on. Up to capacity changes are held until they are polled.
+    public Subscription subscribe(int capacity) {
+        Subscription subscription = new Subscription(this, capacity);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    // Publish a change that is already saved. Call it in the order the changes are made.
+    void publish(InventoryChange change) {
+        publishWhenSaved(change, CompletableFuture.completedFuture(null));
+    }
+
+    // Publish a change once saved completes, after the ones published before it. Dropped if the save fails.
+    void publishWhenSaved(InventoryChange change, CompletableFuture<?> saved) {
+        synchronized (pending) {
+            pending.add(new PendingChange(change, saved));
+        }
+        saved.whenComplete((ignored, error) -> deliverSaved());
+    }
+
+    // Hand out the changes at the front that are saved, and drop the ones whose save failed
+    private void deliverSaved() {
+        synchronized (pending) {
+            while (!pending.isEmpty() && pending.peek().saved.isDone()) {
+                PendingChange next = pending.poll();
+                if (!next.saved.isCompletedExceptionally()) {
+                    deliver(next.change);
+                }
+            }
+        }
+    }
+
+    private void deliver(InventoryChange change) {
+        for (Subscription subscription : subscriptions) {
+            if (!subscription.queue.offer(change)) {
+                subscription.cutOff = true; // Full, so it has already missed this one
+                subscriptions.remove(subscription);
+            }
+        }
+    }
+}
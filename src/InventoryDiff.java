@@ -0,0 +1,151 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+// Compares two inventory CSV snapshots and reports what changed, in engine number order.
+// Both files are read once, side by side like a merge join, so it takes O(n) time and keeps a row of each in memory.
+//
+// Snapshots written by saveInventoryToCSV are sorted already. A file that isn't (the main CSV, which new items
+// are appended to) is sorted into a temp file with InventoryMerge first. That is an external sort: about one
+// run of InventoryMerge.RUN_SIZE items (500,000 unless -Dinventory.merge.runSize says otherwise) is in memory
+// at a time, the rest is spilled to temp files.
+//
+// Duplicate engine numbers are resolved the same way on both paths, InventoryMerge's way: the latest date
+// entered wins, on the same date the row further down the file wins, and a date that can't be read is older
+// than any other. So a file gives the same diff sorted or not.
+public class InventoryDiff {
+
+    // Report every change from the before file to the after file. Returns how many there were.
+    public static long diff(Path before, Path after, Consumer<InventoryChange> changes) throws IOException {
+        Path sortedBefore = null, sortedAfter = null;
+        try {
+            sortedBefore = isSorted(before) ? before : sortedCopy(before);
+            sortedAfter = isSorted(after) ? after : sortedCopy(after);
+            try (SortedRows oldRows = new SortedRows(sortedBefore); SortedRows newRows = new SortedRows(sortedAfter)) {
+                return join(oldRows, newRows, changes);
+            }
+        } finally {
+            if (sortedBefore != null && sortedBefore != before) {
+                Files.deleteIfExists(sortedBefore);
+            }
+            if (sortedAfter != null && sortedAfter != after) {
+                Files.deleteIfExists(sortedAfter);
+            }
+        }
+    }
+
+    private static long join(SortedRows oldRows, SortedRows newRows, Consumer<InventoryChange> changes) throws IOException {
+        long count = 0;
+        InventoryManagement.InventoryItem oldItem = oldRows.next();
+        InventoryManagement.InventoryItem newItem = newRows.next();
+        while (oldItem != null || newItem != null) {
+            int order = oldItem == null ? 1 : newItem == null ? -1 : oldItem.engineNumber.compareTo(newItem.engineNumber);
+            InventoryChange change;
+            if (order < 0) {
+                change = InventoryChange.removed(oldItem); // Only in the old file
+                oldItem = oldRows.next();
+            } else if (order > 0) {
+                change = InventoryChange.added(newItem); // Only in the new file
+                newItem = newRows.next();
+            } else {
+                change = InventoryChange.between(oldItem, newItem); // In both, null if it's the same
+                oldItem = oldRows.next();
+                newItem = newRows.next();
+            }
+            if (change != null) {
+                changes.accept(change);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // One pass to see if the engine numbers only go up (or repeat)
+    private static boolean isSorted(Path file) throws IOException {
+        try (SortedRows rows = new SortedRows(file)) {
+            while (rows.sorted && rows.next() != null) {
+                // Stop at the first one out of order
+            }
+            return rows.sorted;
+        }
+    }
+
+    private static Path sortedCopy(Path file) throws IOException {
+        Path sorted = Files.createTempFile("inventory-diff", ".csv");
+        boolean written = false;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(sorted.toFile()))) {
+            writer.write("Date Entered,Stock Label,Brand,Engine Number,Status"); // Write the header row
+            writer.newLine();
+            InventoryMerge.merge(List.of(), List.of(file), item -> {
+                try {
+                    writer.write(item.toString());
+                    writer.newLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            written = true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (!written) {
+                Files.deleteIfExists(sorted);
+            }
+        }
+        return sorted;
+    }
+
+    // The rows of a CSV file, read like InventoryRepository.forEachItemInCSV, one per engine number.
+    // In a sorted file the duplicates of an engine number are next to each other.
+    private static class SortedRows implements Closeable {
+        private final BufferedReader reader;
+        private String previous; // Engine number of the last row read
+        private InventoryManagement.InventoryItem pending; // Read ahead, the first row of the next engine number
+        boolean sorted = true; // False once an engine number went down
+
+        SortedRows(Path file) throws IOException {
+            reader = new BufferedReader(new FileReader(file.toFile()));
+            reader.readLine(); // Skip the header
+        }
+
+        // The winner among the next engine number's rows, or null at the end
+        InventoryManagement.InventoryItem next() throws IOException {
+            InventoryManagement.InventoryItem best = pending != null ? pending : readRow();
+            if (best == null) {
+                return null;
+            }
+            InventoryManagement.InventoryItem item;
+            while ((item = readRow()) != null && item.engineNumber.equals(best.engineNumber)) {
+                // Later row wins on the same date, like in InventoryMerge
+                if (InventoryQueryIndex.packDate(item.dateEntered) >= InventoryQueryIndex.packDate(best.dateEntered)) {
+                    best = item;
+                }
+            }
+            pending = item;
+            return best;
+        }
+
+        // The next row with 5 fields, or null at the end
+        private InventoryManagement.InventoryItem readRow() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] data = line.split(",");
+                if (data.length != 5) {
+                    continue;
+                }
+                if (previous != null && data[3].compareTo(previous) < 0) {
+                    sorted = false;
+                }
+                previous = data[3];
+                return new InventoryManagement.InventoryItem(data[0], data[1], data[2], data[3], data[4]);
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Append-only write-ahead log for inventory changes.
+// Each record is one line: "A,<item>" when an item is added, "D,<engine number>" when it is deleted
+// and "U,<item>" when an item's other fields are changed.
+// One writer thread takes everything that is queued, writes it and syncs the file once (group commit).
+public class InventoryJournal {
+
+    private static final String ADD_RECORD = "A";
+    private static final String DELETE_RECORD = "D";
+    private static final String UPDATE_RECORD = "U";
+
+    private final Path logPath; // The log that new records go to
+    private final Path oldLogPath; // The previous log, while a compaction folds it into a new snapshot
+    private final Consumer<List<InventoryManagement.InventoryItem>> snapshotWriter; // Writes a new snapshot during compaction
+
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong logSize = new AtomicLong(); // Bytes in the current log, counted when records are queued
+    private final AtomicBoolean compacting = new AtomicBoolean(); // Only one compaction at a time
+    private final ExecutorService compactionExecutor;
+    private final Thread writerThread;
+    private FileChannel channel; // Only used by the writer thread
+    private volatile boolean closed;
+
+    // Something waiting for the writer thread: a record, a log rotation, or the close marker
+    private static class PendingWrite {
+        final byte[] record; // null for rotations and the close marker
+        final List<InventoryManagement.InventoryItem> snapshot; // Inventory to write when rotating
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        PendingWrite(byte[] record, List<InventoryManagement.InventoryItem> snapshot) {
+            this.record = record;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private static final PendingWrite CLOSE = new PendingWrite(null, null);
+
+    // Open (or create) the log and start the writer thread
+    public InventoryJournal(Path logPath, Consumer<List<InventoryManagement.InventoryItem>> snapshotWriter) throws IOException {
+        this.logPath = logPath;
+        this.oldLogPath = oldLogPathFor(logPath);
+        this.snapshotWriter = snapshotWriter;
+        this.channel = openLog(logPath);
+        this.logSize.set(channel.size());
+
+        this.compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inventory-journal-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writerThread = new Thread(this::writeLoop, "inventory-journal-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    // The log a compaction is still working on, if any
+    static Path oldLogPathFor(Path logPath) {
+        return logPath.resolveSibling(logPath.getFileName() + ".old");
+    }
+
+    // Queue an added item. The future completes once the record is synced to disk.
+    public CompletableFuture<Void> appendAdd(InventoryManagement.InventoryItem item) {
+        return append(ADD_RECORD + "," + item.toString());
+    }
+
+    // Queue a deleted engine number. The future completes once the record is synced to disk.
+    public CompletableFuture<Void> appendDelete(String engineNumber) {
+        return append(DELETE_RECORD + "," + engineNumber);
+    }
+
+    // Queue a changed item. The future completes once the record is synced to disk.
+    public CompletableFuture<Void> appendUpdate(InventoryManagement.InventoryItem item) {
+        return append(UPDATE_RECORD + "," + item.toString());
+    }
+
+    private CompletableFuture<Void> append(String line) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Journal is closed"));
+        }
+        byte[] record = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        PendingWrite write = new PendingWrite(record, null);
+        logSize.addAndGet(record.length);
+        queue.add(write);
+        return write.done;
+    }
+
+    // Size of the current log in bytes, including records that are still queued
+    public long size() {
+        return logSize.get();
+    }
+
+    // Start a background compaction unless one is already running.
+    // The snapshot must include every change queued so far, so call this from the thread that makes the changes.
+    public boolean compact(List<InventoryManagement.InventoryItem> snapshot) {
+        if (closed || !compacting.compareAndSet(false, true)) {
+            return false;
+        }
+        logSize.set(0); // Everything queued from now on goes to the new log
+        queue.add(new PendingWrite(null, snapshot));
+        return true;
+    }
+
+    // Flush everything that is queued, wait for a running compaction and stop the writer thread
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(CLOSE);
+        try {
+            writerThread.join();
+            compactionExecutor.shutdown();
+            compactionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The writer thread: take whatever is queued, write it, then sync once for the whole batch
+    private void writeLoop() {
+        List<PendingWrite> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch);
+
+            List<PendingWrite> written = new ArrayList<>();
+            try {
+                for (PendingWrite write : batch) {
+                    if (write == CLOSE) {
+                        running = false;
+                    } else if (write.record != null) {
+                        ByteBuffer buffer = ByteBuffer.wrap(write.record);
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                        written.add(write);
+                    } else {
+                        channel.force(false); // Records before the rotation are durable in the old log
+                        completeAll(written);
+                        rotate(write.snapshot);
+                        write.done.complete(null);
+                    }
+                }
+                channel.force(false); // One sync for the whole batch
+                completeAll(written);
+            } catch (IOException e) {
+                System.err.println("Error writing inventory journal: " + e.getMessage()); // Print error message if the log can't be written
+                for (PendingWrite write : batch) {
+                    write.done.completeExceptionally(e); // No-op for the ones that already made it to disk
+                }
+                running = !batch.contains(CLOSE);
+            }
+            batch.clear();
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing inventory journal: " + e.getMessage());
+        }
+    }
+
+    private static void completeAll(List<PendingWrite> writes) {
+        for (PendingWrite write : writes) {
+            write.done.complete(null);
+        }
+        writes.clear();
+    }
+
+    // Move the current log aside, start a new one and write the snapshot in the background
+    private void rotate(List<InventoryManagement.InventoryItem> snapshot) throws IOException {
+        channel.close();
+        try {
+            Files.move(logPath, oldLogPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            compacting.set(false); // Keep using the current log and try again later
+            throw e;
+        } finally {
+            channel = openLog(logPath);
+        }
+
+        compactionExecutor.execute(() -> {
+            try {
+                snapshotWriter.accept(snapshot);
+                Files.deleteIfExists(oldLogPath); // The new snapshot already has these changes
+            } catch (IOException | RuntimeException e) {
+                // Keep the old log, replaying it over either snapshot gives the same inventory
+                System.err.println("Error compacting inventory journal: " + e.getMessage());
+            } finally {
+                compacting.set(false);
+            }
+        });
+    }
+
+    private static FileChannel openLog(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Apply a log to the inventory, in order. Adds keep an existing item like insertIntoAVL does,
+    // updates only change an item that is there, so replaying a record twice changes nothing.
+    // A last line without its newline was never synced, so it is ignored.
+    static void replay(Path path, Map<String, InventoryManagement.InventoryItem> inventory) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        applyRecord(line.toString(), inventory);
+                        line.setLength(0);
+                    } else {
+                        line.append(buffer[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void applyRecord(String line, Map<String, InventoryManagement.InventoryItem> inventory) {
+        int comma = line.indexOf(',');
+        if (comma < 0) {
+            return;
+        }
+        String type = line.substring(0, comma);
+        String payload = line.substring(comma + 1);
+        if (type.equals(ADD_RECORD) || type.equals(UPDATE_RECORD)) {
+            String[] data = payload.split(",");
+            if (data.length != 5) {
+                return;
+            }
+            InventoryManagement.InventoryItem item = new InventoryManagement.InventoryItem(data[0], data[1], data[2], data[3], data[4]);
+            if (type.equals(ADD_RECORD)) {
+                inventory.putIfAbsent(data[3], item);
+            } else {
+                inventory.replace(data[3], item); // Keeps its place in the map's order
+            }
+        } else if (type.equals(DELETE_RECORD)) {
+            inventory.remove(payload);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Engine number lookups straight from a CSV snapshot sorted by engine number (what saveInventoryToCSV writes),
+// for inventories too big to load when only a few items are looked up often.
+//
+// Opening reads the file once and keeps a sparse index: the first engine number in every block of about
+// blockSize bytes, and where its row starts. A lookup finds the block the engine number would be in
+// and reads just that block with a positional read, so the file is never loaded and a miss costs one read
+// of a few KB. The items found are kept in a TinyLfuCache, so the popular ones don't need a read at all.
+// So are the engine numbers that aren't in the file, since a file that doesn't change can't gain them.
+//
+// The file must not change while it is open. A file that isn't sorted is refused when it is opened.
+public class InventoryLookup implements Closeable {
+
+    private static final int READ_BUFFER_SIZE = 1 << 16; // For the pass that builds the index
+    // Cached for an engine number that isn't in the file, because the cache can't hold null
+    private static final InventoryManagement.InventoryItem NOT_IN_FILE = new InventoryManagement.InventoryItem("", "", "", "", "");
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int blockSize;
+    private final String[] keys; // First engine number of each block
+    private final long[] offsets; // Where that row starts
+    private final long fileSize;
+    private final TinyLfuCache<String, InventoryManagement.InventoryItem> cache;
+    private final int cacheCapacity;
+
+    private long hits;
+    private long misses;
+    private long missNanos; // Total time spent on misses
+
+    private InventoryLookup(Path file, FileChannel channel, int blockSize, List<String> keys, long[] offsets, int cacheSize) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.blockSize = blockSize;
+        this.keys = keys.toArray(new String[0]);
+        this.offsets = offsets;
+        this.fileSize = channel.size();
+        this.cache = new TinyLfuCache<>(cacheSize);
+        this.cacheCapacity = cacheSize;
+    }
+
+    // Index a sorted CSV file. Holds up to cacheSize items in memory, and one index entry per blockSize bytes.
+    public static InventoryLookup open(Path file, int cacheSize, int blockSize) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            List<String> keys = new ArrayList<>();
+            long[] offsets = new long[16];
+            String previous = null;
+            long nextBlock = 0; // The next row starting at or past this offset gets an index entry
+            long lineStart = 0;
+            boolean header = true;
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            long position = 0;
+            while (true) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                byte[] bytes = buffer.array();
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (bytes[i] != '\n') {
+                        continue;
+                    }
+                    line.write(bytes, start, i - start);
+                    String engineNumber = header ? null : engineNumberOf(line.toString(StandardCharsets.UTF_8));
+                    header = false;
+                    if (engineNumber != null && !engineNumber.equals(previous)) {
+                        if (previous != null && engineNumber.compareTo(previous) < 0) {
+                            throw notSorted(file, engineNumber, previous);
+                        }
+                        if (lineStart >= nextBlock) {
+                            if (keys.size() == offsets.length) {
+                                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                            }
+                            offsets[keys.size()] = lineStart;
+                            keys.add(engineNumber);
+                            nextBlock = lineStart + blockSize;
+                        }
+                        previous = engineNumber;
+                    }
+                    line.reset();
+                    lineStart = position + i + 1;
+                    start = i + 1;
+                }
+                line.write(bytes, start, read - start); // Part of a row, finished by the next read
+                position += read;
+            }
+            if (line.size() > 0 && !header) {
+                String engineNumber = engineNumberOf(line.toString(StandardCharsets.UTF_8)); // Last row, no newline after it
+                if (engineNumber != null && !engineNumber.equals(previous)) {
+                    if (previous != null && engineNumber.compareTo(previous) < 0) {
+                        throw notSorted(file, engineNumber, previous);
+                    }
+                    if (lineStart >= nextBlock) { // Indexed like any other row
+                        if (keys.size() == offsets.length) {
+                            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                        }
+                        offsets[keys.size()] = lineStart;
+                        keys.add(engineNumber);
+                    }
+                }
+            }
+            return new InventoryLookup(file, channel, blockSize, keys, offsets, cacheSize);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static IOException notSorted(Path file, String engineNumber, String previous) {
+        return new IOException(file + " is not sorted by engine number (" + engineNumber + " comes after " + previous
+                + "). Use a CSV file saved from the menu, those are sorted.");
+    }
+
+    // The item with this engine number, or null. The first row counts if there is more than one, like when loading.
+    public InventoryManagement.InventoryItem find(String engineNumber) throws IOException {
+        synchronized (cache) {
+            InventoryManagement.InventoryItem item = cache.get(engineNumber);
+            if (item != null) {
+                hits++;
+                InventoryMetrics.LOOKUP_HITS.increment();
+                return item == NOT_IN_FILE ? null : item;
+            }
+        }
+
+        long start = System.nanoTime();
+        long metricsStart = InventoryMetrics.now();
+        InventoryManagement.InventoryItem item = readFromFile(engineNumber);
+        InventoryMetrics.LOOKUP_MISS.record(metricsStart);
+        synchronized (cache) {
+            misses++;
+            missNanos += System.nanoTime() - start;
+            cache.put(engineNumber, item != null ? item : NOT_IN_FILE);
+        }
+        InventoryMetrics.LOOKUP_MISSES.increment();
+        return item;
+    }
+
+    // Read the one block the engine number can be in. Index entries are only made at the first row of an
+    // engine number, so all its rows are in the block starting with it, or else in the last block starting before it.
+    private InventoryManagement.InventoryItem readFromFile(String engineNumber) throws IOException {
+        int block = firstKeyAtLeast(engineNumber);
+        if (block == keys.length || !keys[block].equals(engineNumber)) {
+            block--;
+        }
+        if (block < 0) {
+            return null; // Before the first row
+        }
+        long start = offsets[block];
+        long end = block + 1 < keys.length ? offsets[block + 1] : fileSize;
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                break; // Shorter than when it was indexed
+            }
+        }
+        String rows = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        for (String line : rows.split("\n")) {
+            String[] data = line.split(",");
+            if (data.length != 5) {
+                continue;
+            }
+            String status = data[4].endsWith("\r") ? data[4].substring(0, data[4].length() - 1) : data[4];
+            int order = data[3].compareTo(engineNumber);
+            if (order == 0) {
+                return new InventoryManagement.InventoryItem(data[0], data[1], data[2], data[3], status);
+            } else if (order > 0) {
+                break; // Sorted, so it isn't here
+            }
+        }
+        return null;
+    }
+
+    // Index of the first block whose first engine number is at least this one (keys.length if none is)
+    private int firstKeyAtLeast(String engineNumber) {
+        int low = 0, high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(engineNumber) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // The engine number of a CSV row, or null if it isn't an item row (same rule as loading: exactly 5 fields)
+    private static String engineNumberOf(String line) {
+        String[] data = line.split(",");
+        return data.length == 5 ? data[3] : null;
+    }
+
+    // How many blocks the sparse index has
+    int blockCount() {
+        return keys.length;
+    }
+
+    // Share of lookups answered from the cache, 0 to 1
+    public double hitRatio() {
+        synchronized (cache) {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+    }
+
+    // One line for the end of a run, to size the cache with: hit ratio and what a miss costs
+    public String stats() {
+        synchronized (cache) {
+            long lookups = hits + misses;
+            return String.format("Lookups: %d, hit ratio %.1f%%, mean miss %.1f us, cache %d of %d entries, index %d blocks of %d bytes over %s",
+                    lookups, lookups == 0 ? 0.0 : 100.0 * hits / lookups, misses == 0 ? 0.0 : missNanos / 1000.0 / misses,
+                    cache.size(), cacheCapacity, keys.length, blockSize, file);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -1,5 +1,8 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.text.SimpleDateFormat;
 
 public class InventoryManagement {
@@ -30,10 +33,11 @@ public class InventoryManagement {
 
     // This is the class for our AVL tree data structure.
     // Like a family tree, but for our inventory items, and it keeps itself balanced
-    private static class TreeNode {
+    static class TreeNode {
         InventoryItem item; // The item itself
         TreeNode left, right; // The "children" on the left and right
         int height; // The height of this node in the tree
+        int size; // How many items are in this subtree, for counting and finding items by position
 
         // Constructor to create a new "family member"
         public TreeNode(InventoryItem item) {
@@ -41,6 +45,7 @@ public class InventoryManagement {
             this.left = null;
             this.right = null;
             this.height = 1; // New nodes start with a height of 1
+            this.size = 1; // And hold just themselves
         }
     }
 
@@ -48,16 +53,127 @@ public class InventoryManagement {
     private static TreeNode root = null;
     // This is for quickly finding an item based on its engine number
     private static HashMap<String, InventoryItem> inventoryMap = new HashMap<>();
-
-    private static InventoryRepository inventoryRepository = new InventoryRepository(); // Create an instance of InventoryRepository
+    // This is for finding all items of a brand without looking at every item
+    private static BrandIndex brandIndex = new BrandIndex();
+    // This is for advanced searches on brand, status, stock label and date together
+    static InventoryQueryIndex queryIndex = new InventoryQueryIndex();
+    // Running totals for the reports, so they don't have to look at every item
+    private static InventoryReports reports = new InventoryReports();
+    // With --btree the inventory lives in this file instead of the tree, the map and the indexes above
+    private static InventoryBTree diskInventory = null;
+    // With --lookup, engine numbers are looked up in a sorted CSV file, through a cache, and nothing is loaded
+    private static InventoryLookup csvLookup = null;
+    // Every add, delete and merged change, as it is made, for code that keeps something else in sync
+    static final InventoryChangeFeed changeFeed = new InventoryChangeFeed();
+
+    static InventoryRepository inventoryRepository = new InventoryRepository(); // Create an instance of InventoryRepository
+    // Keep adds and deletes in an append-only log instead of writing a new CSV file on every delete.
+    // Off unless the program is started with -Dinventory.journal=true; without it every change goes straight to the CSV file as before.
+    private static final boolean USE_JOURNAL = Boolean.getBoolean("inventory.journal");
+    private static final String EXIT_CHOICE = "14"; // The menu option that ends the program
+    private static final int DEFAULT_SERVER_PORT = 8080;
+    private static final String SOLD_STATUS = "Sold"; // What "mark sold" sets the status to
+    // Pages of the disk inventory kept in memory (4 KB each on disk, a few times that as objects)
+    private static final int DISK_CACHE_PAGES = Integer.getInteger("inventory.btree.cachePages", 16384);
+    // Items --lookup keeps in memory, and how many bytes of the file each of its index entries covers
+    private static final int LOOKUP_CACHE_SIZE = Integer.getInteger("inventory.lookup.cacheSize", 100_000);
+    private static final int LOOKUP_BLOCK_SIZE = Integer.getInteger("inventory.lookup.blockSize", 16384);
 
     // This is our main method. The program starts here.
+    // Run with "--batch <file>" (or "--batch -" for stdin) to apply a command file instead of showing the menu,
+    // or with "--serve [port]" to answer HTTP requests on localhost (see InventoryServer),
+    // or with "--merge <csv file>..." to merge other inventory files in and exit (see mergeInventoryFiles),
+    // or with "--diff <old csv> <new csv>" to print what changed between two snapshots (see InventoryDiff),
+    // or with "--lookup <sorted csv>" to search engine numbers in a file too big to load (see InventoryLookup).
+    // Put "--btree <file>" first to keep the inventory on disk instead of in memory (see InventoryBTree).
+    // Start Java with -Dinventory.journal=true to save changes in a journal instead of rewriting the CSV file (see InventoryJournal).
     public static void main(String[] args) {
-        //loadInventoryFromCSV(); // Load our inventory from the CSV file
-        List<InventoryItem> initialInventory = inventoryRepository.loadInventoryFromCSV();
-        for (InventoryItem item : initialInventory) {
-            root = insertIntoAVL(root, item); // Insert items from CSV into AVL tree
-            addItemToInventoryMap(item); // Add items to the inventory map
+        if (args.length > 0 && args[0].equals("--diff")) {
+            if (args.length != 3) {
+                System.err.println("Usage: InventoryManagement --diff <old csv> <new csv>");
+                System.exit(2);
+            }
+            if (!printDiff(args[1], args[2])) {
+                System.exit(1);
+            }
+            return; // Doesn't need the inventory loaded
+        }
+        if (args.length > 0 && args[0].equals("--lookup")) {
+            if (args.length != 2) {
+                System.err.println("Usage: InventoryManagement --lookup <csv file sorted by engine number>");
+                System.exit(2);
+            }
+            if (!runLookups(args[1])) {
+                System.exit(1);
+            }
+            return; // Reads the file as it goes instead
+        }
+        String diskFile = null;
+        if (args.length >= 2 && args[0].equals("--btree")) {
+            diskFile = args[1];
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        boolean batchMode = args.length > 0 && args[0].equals("--batch");
+        boolean serverMode = args.length > 0 && args[0].equals("--serve");
+        boolean mergeMode = args.length > 0 && args[0].equals("--merge");
+        int port = DEFAULT_SERVER_PORT;
+        try {
+            if (serverMode && args.length == 2) {
+                port = Integer.parseInt(args[1]);
+            }
+        } catch (NumberFormatException e) {
+            serverMode = false; // Shows the usage below
+        }
+        if ((batchMode && args.length != 2) || (serverMode && args.length > 2) || (mergeMode && args.length < 2)
+                || (args.length > 0 && !batchMode && !serverMode && !mergeMode)) {
+            System.err.println("Usage: InventoryManagement [--btree <file>] [--batch <command file, or - for stdin> | --serve [port] | --merge <csv file>...]");
+            System.err.println("       InventoryManagement --diff <old csv> <new csv>");
+            System.err.println("       InventoryManagement --lookup <csv file sorted by engine number>");
+            System.exit(2);
+        }
+
+        if (diskFile != null) {
+            openDiskInventory(diskFile); // Changes are written to the file itself, no journal needed
+        } else {
+            //loadInventoryFromCSV(); // Load our inventory from the CSV file
+            boolean leftoverJournal = !USE_JOURNAL && inventoryRepository.hasJournal(); // From a run with the journal on
+            List<InventoryItem> initialInventory = USE_JOURNAL || leftoverJournal
+                    ? inventoryRepository.loadInventoryWithJournal() // Last snapshot plus the journal
+                    : inventoryRepository.loadInventoryFromCSVParallel(); // Memory-mapped, parallel load
+            bulkLoadInventory(initialInventory); // Build the AVL tree and the inventory map in one pass
+            InventoryMetrics.gauge("tree.height", () -> height(root)); // Only registered when metrics are on
+            if (USE_JOURNAL) {
+                inventoryRepository.openJournal(InventoryManagement::getSortedInventory);
+            } else if (leftoverJournal) {
+                inventoryRepository.replaceSnapshot(getSortedInventory()); // Write its changes into the CSV file and drop it
+            }
+        }
+        InventoryMetrics.gauge("tree.size", InventoryManagement::inventorySize);
+
+        if (batchMode) {
+            boolean succeeded = runBatch(args[1]);
+            closeStorage(); // Make sure every change is on disk
+            if (InventoryMetrics.ENABLED) {
+                InventoryMetrics.dump(System.err); // Final numbers for this run
+            }
+            if (!succeeded) {
+                System.exit(1); // So scripts can tell something went wrong
+            }
+            return;
+        }
+
+        if (mergeMode) {
+            boolean succeeded = mergeInventoryFiles(Arrays.asList(args).subList(1, args.length));
+            closeStorage();
+            if (!succeeded) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        if (serverMode) {
+            startServer(port);
+            return; // The server's threads keep running until the program is stopped
         }
 
         Scanner scanner = new Scanner(System.in); // To get input from the user
@@ -71,7 +187,15 @@ public class InventoryManagement {
             System.out.println("3. Search Item by Engine Number");
             System.out.println("4. Search Item by Brand");
             System.out.println("5. Display Sorted Inventory");
-            System.out.println("6. Exit");
+            System.out.println("6. Advanced Search");
+            System.out.println("7. Browse Inventory Pages");
+            System.out.println("8. Search Engine Number Prefix or Range");
+            System.out.println("9. Find Item by Position");
+            System.out.println("10. Reports");
+            System.out.println("11. Merge Inventory Files");
+            System.out.println("12. Update Item");
+            System.out.println("13. Mark Items Sold");
+            System.out.println("14. Exit");
             System.out.print("Enter your choice: ");
             choice = scanner.nextLine(); // Let's get the user's choice
 
@@ -94,6 +218,30 @@ public class InventoryManagement {
                         displaySortedInventory(); // Let's show the inventory, sorted
                         break;
                     case "6":
+                        advancedSearch(scanner); // Let's search on several fields at once
+                        break;
+                    case "7":
+                        browseInventory(scanner); // Let's show the inventory a page at a time
+                        break;
+                    case "8":
+                        searchEngineNumberRange(scanner); // Let's search a block of engine numbers
+                        break;
+                    case "9":
+                        findItemByPosition(scanner); // Let's find an item by its place in engine number order
+                        break;
+                    case "10":
+                        showReports(scanner); // Let's show the stock totals
+                        break;
+                    case "11":
+                        mergeFiles(scanner); // Let's bring other inventory files in
+                        break;
+                    case "12":
+                        updateItem(scanner); // Let's change an item's details
+                        break;
+                    case "13":
+                        markItemsSold(scanner); // Let's record a few sales at once
+                        break;
+                    case EXIT_CHOICE:
                         System.out.println("Exiting..."); // Let's exit
                         break;
                     default:
@@ -101,13 +249,84 @@ public class InventoryManagement {
                 }
             } else {
                 System.out.println("Operation cancelled.");
-                if (finalChoice.equals("6")) {  // Check the stored choice here
+                if (finalChoice.equals(EXIT_CHOICE)) {  // Check the stored choice here
                     choice = "";  // Reset choice to re-display main menu
                 }
             }
-        } while (!choice.equals("6")); // Repeat until the user exits
+        } while (!choice.equals(EXIT_CHOICE)); // Repeat until the user exits
 
         scanner.close(); // Let's close the scanner
+        closeStorage(); // Make sure every change is on disk
+        if (InventoryMetrics.ENABLED) {
+            InventoryMetrics.dump(System.err); // Final numbers for this run
+        }
+    }
+
+    // Serve the inventory over HTTP until the program is stopped (Ctrl+C)
+    private static void startServer(int port) {
+        try {
+            InventoryServer server = new InventoryServer(port);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop(); // No more changes after this
+                closeStorage(); // Make sure every change is on disk
+            }));
+            System.out.println("Serving the inventory on http://localhost:" + server.port() + "/items (Ctrl+C to stop)");
+        } catch (IOException e) {
+            System.err.println("Error starting the server: " + e.getMessage()); // Print error message if the port can't be used
+            e.printStackTrace(); // Print the stack trace for debugging
+            closeStorage();
+            System.exit(1);
+        }
+    }
+
+    // Open the disk inventory, filling it from the CSV file if the file is new, and count the report totals
+    private static void openDiskInventory(String file) {
+        try {
+            Path path = Paths.get(file);
+            boolean isNew = !Files.exists(path) || Files.size(path) == 0;
+            diskInventory = InventoryBTree.open(path, DISK_CACHE_PAGES);
+            if (isNew) {
+                System.out.println("Copying the inventory from the CSV file into " + file + "...");
+                inventoryRepository.forEachItemInCSV(item -> {
+                    try {
+                        diskInventory.add(item); // Duplicates are dropped, the first one wins
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                diskInventory.flush();
+            }
+            reports = countReports(diskInventory.range(null, false, null)); // One pass, a page at a time
+            InventoryMetrics.gauge("btree.pageReads", diskInventory::pageReads);
+            InventoryMetrics.gauge("btree.pageWrites", diskInventory::pageWrites);
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            System.err.println("Error opening the disk inventory: " + e.getMessage()); // Print error message if the file can't be used
+            e.printStackTrace(); // Print the stack trace for debugging
+            System.exit(1);
+        }
+    }
+
+    // Save everything and close the journal or the disk inventory
+    private static void closeStorage() {
+        inventoryRepository.closeJournal();
+        if (diskInventory != null) {
+            try {
+                diskInventory.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the disk inventory: " + e.getMessage()); // Print error message if the file can't be written
+                e.printStackTrace(); // Print the stack trace for debugging
+            }
+        }
+    }
+
+    // Report totals counted from scratch, one item at a time
+    private static InventoryReports countReports(Iterable<InventoryItem> items) {
+        InventoryReports counted = new InventoryReports();
+        for (InventoryItem item : items) {
+            counted.add(item);
+        }
+        return counted;
     }
 
     // This method asks the user to confirm their choice
@@ -119,8 +338,8 @@ public class InventoryManagement {
 
     // This method saves the inventory to the CSV file
     private static void saveInventoryToCSV(String newFilePath) {
-        List<InventoryItem> sortedList = getSortedInventory();
-        inventoryRepository.saveInventoryToCSV(newFilePath, sortedList); //Call saveInventoryToCSV with a new filepath
+        // Streamed from the tree row by row, so saving doesn't need a second copy of the inventory
+        inventoryRepository.saveInventoryToCSV(newFilePath, sortedInventoryAfter(null)); //Call saveInventoryToCSV with a new filepath
     }
 
     // This method adds an item to the inventory
@@ -139,12 +358,15 @@ public class InventoryManagement {
 
         InventoryItem newItem = new InventoryItem(dateEntered, stockLabel, brand, engineNumber, status); // Create the new item
 
-        inventoryRepository.addItemToCSV(newItem); // Add the new item to the CSV file
-
-        root = insertIntoAVL(root, newItem); // Add the new item to the AVL tree
-        addItemToInventoryMap(newItem); // Add the new item to the inventory map
-
-        System.out.println("Item added successfully!"); // Yay! Success!
+        CompletableFuture<Boolean> added = addInventoryItem(newItem); // Add it to the tree, the map and the file
+        if (!inventoryRepository.awaitJournal(added)) {
+            return; // Couldn't save it, the error is already printed
+        }
+        if (added.join()) {
+            System.out.println("Item added successfully!"); // Yay! Success!
+        } else {
+            System.out.println("An item with that Engine Number already exists!"); // Engine numbers are unique
+        }
     }
 
     // This method deletes an item from the inventory
@@ -152,17 +374,15 @@ public class InventoryManagement {
         System.out.print("Enter Engine Number to delete: ");
         String engineNumber = scanner.nextLine(); // Let's get the engine number to delete
 
-        if (!inventoryMap.containsKey(engineNumber)) {
+        if (itemWithEngineNumber(engineNumber) == null) {
             System.out.println("Item not found!"); // We can't find the item
             return;
         }
 
         if (confirmDelete(scanner, engineNumber)) {
-            root = deleteFromAVL(root, engineNumber); // Delete the item from the AVL tree
-            removeItemFromInventoryMap(engineNumber); // Remove the item from the inventory map
-
-            String newFilePath = inventoryRepository.generateNewFilePath();
-            saveInventoryToCSV(newFilePath);  // Save the updated inventory to CSV
+            if (!inventoryRepository.awaitJournal(deleteInventoryItem(engineNumber))) {
+                return; // Couldn't save it, the error is already printed
+            }
             System.out.println("Item deleted successfully!"); // Yay! Success!
             displaySortedInventory(); // Display the updated inventory table
         } else {
@@ -170,6 +390,56 @@ public class InventoryManagement {
         }
     }
 
+    // Change an item's details (everything but the engine number). A blank answer keeps what is there.
+    private static void updateItem(Scanner scanner) {
+        System.out.print("Enter Engine Number to update: ");
+        String engineNumber = scanner.nextLine();
+        InventoryItem item = itemWithEngineNumber(engineNumber);
+        if (item == null) {
+            System.out.println("Item not found!"); // We can't find the item
+            return;
+        }
+
+        System.out.println("Enter the new details, or leave a field blank to keep it:");
+        String dateEntered = askOrKeep(scanner, "Date Entered", item.dateEntered);
+        String stockLabel = askOrKeep(scanner, "Stock Label", item.stockLabel);
+        String brand = askOrKeep(scanner, "Brand", item.brand);
+        String status = askOrKeep(scanner, "Status", item.status);
+
+        InventoryItem updated = new InventoryItem(dateEntered, stockLabel, brand, engineNumber, status);
+        if (!inventoryRepository.awaitJournal(updateInventoryItem(updated))) {
+            return; // Couldn't save it, the error is already printed
+        }
+        System.out.println("Item updated successfully!");
+    }
+
+    private static String askOrKeep(Scanner scanner, String field, String current) {
+        System.out.print(field + " [" + current + "]: ");
+        String answer = scanner.nextLine().trim();
+        return answer.isEmpty() ? current : answer;
+    }
+
+    // Ask for engine numbers and mark them all Sold, saved together
+    private static void markItemsSold(Scanner scanner) {
+        System.out.println("Enter the Engine Numbers of the sold items, one per line (blank line to finish).");
+        List<String> engineNumbers = new ArrayList<>();
+        while (true) {
+            System.out.print("Engine Number: ");
+            String engineNumber = scanner.nextLine().trim();
+            if (engineNumber.isEmpty()) {
+                break;
+            }
+            engineNumbers.add(engineNumber);
+        }
+
+        CompletableFuture<Integer> marked = markItemsSold(engineNumbers);
+        if (!inventoryRepository.awaitJournal(marked)) {
+            return; // Couldn't save them, the error is already printed
+        }
+        int skipped = engineNumbers.size() - marked.join();
+        System.out.println(marked.join() + " items marked " + SOLD_STATUS + (skipped > 0 ? ", " + skipped + " not found or already sold." : "."));
+    }
+
     // This method confirms if the user is sure they want to delete the item
     private static boolean confirmDelete(Scanner scanner, String engineNumber) {
         System.out.print("Are you sure you want to delete item with Engine Number " + engineNumber + "? (Yes/No): ");
@@ -181,8 +451,11 @@ public class InventoryManagement {
     private static void searchItemByEngineNumber(Scanner scanner) {
         System.out.print("Enter Engine Number to search: ");
         String engineNumber = scanner.nextLine();
-        InventoryItem item = inventoryMap.get(engineNumber); // Retrieve item from the inventory map
+        InventoryItem item = findItemByEngineNumber(engineNumber); // Retrieve item from the inventory map
+        printSearchResult(engineNumber, item);
+    }
 
+    private static void printSearchResult(String engineNumber, InventoryItem item) {
         if (item != null) {
             System.out.println("Item found with Engine Number " + engineNumber + ":");
             System.out.println("-----------------------------------------------------------------------------------");
@@ -205,11 +478,9 @@ public class InventoryManagement {
         System.out.println("-----------------------------------------------------------------------------------");
         System.out.printf("%-12s %-12s %-10s %-15s %-10s\n", "Date Entered", "Stock Label", "Brand", "Engine Number", "Status");
         System.out.println("-----------------------------------------------------------------------------------");
-        for (InventoryItem item : inventoryMap.values()) {
-            if (item != null && item.brand.equalsIgnoreCase(brand)) {
-                System.out.printf("%-12s %-12s %-10s %-15s %-10s\n", item.dateEntered, item.stockLabel, item.brand, item.engineNumber, item.status);
-                found = true;
-            }
+        for (InventoryItem item : findItemsByBrand(brand)) { // Already sorted by engine number
+            System.out.printf("%-12s %-12s %-10s %-15s %-10s\n", item.dateEntered, item.stockLabel, item.brand, item.engineNumber, item.status);
+            found = true;
         }
 
         if (!found) {
@@ -219,51 +490,1041 @@ public class InventoryManagement {
         System.out.println("-----------------------------------------------------------------------------------");
     }
 
-    // This method shows the inventory, sorted
-    private static void displaySortedInventory() {
-        List<InventoryItem> sortedList = getSortedInventory();
+    // Search on brand, status, stock label and date range together. Blank answers match everything.
+    private static void advancedSearch(Scanner scanner) {
+        InventoryQuery query = new InventoryQuery();
+        query.brand(askOptional(scanner, "Brand (blank for any): "));
+        query.status(askOptional(scanner, "Status (blank for any): "));
+        query.stockLabel(askOptional(scanner, "Stock Label (blank for any): "));
+        query.enteredBetween(askOptional(scanner, "Entered from, MM/dd/yyyy (blank for any): "),
+                askOptional(scanner, "Entered to, MM/dd/yyyy (blank for any): "));
+
+        List<InventoryItem> results;
+        try {
+            long start = InventoryMetrics.now();
+            if (diskInventory != null) {
+                results = new ArrayList<>(); // No indexes on disk, so look at every item (already sorted)
+                for (InventoryItem item : diskInventory.range(null, false, null)) {
+                    if (query.matches(item)) {
+                        results.add(item);
+                    }
+                }
+            } else {
+                results = queryIndex.search(query); // Answered from the indexes, already sorted
+            }
+            InventoryMetrics.SEARCH_ADVANCED.record(start);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage()); // Bad date
+            return;
+        }
 
-        System.out.println("Sorted Inventory:");
+        System.out.println("Items found: " + results.size());
         System.out.println("-----------------------------------------------------------------------------------");
         System.out.printf("%-12s %-12s %-10s %-15s %-10s\n", "Date Entered", "Stock Label", "Brand", "Engine Number", "Status");
         System.out.println("-----------------------------------------------------------------------------------");
-        for (InventoryItem item : sortedList) {
+        for (InventoryItem item : results) {
             System.out.printf("%-12s %-12s %-10s %-15s %-10s\n", item.dateEntered, item.stockLabel, item.brand, item.engineNumber, item.status);
         }
-
         System.out.println("-----------------------------------------------------------------------------------");
     }
 
+    // Ask for a value that may be left blank. Blank comes back as null.
+    private static String askOptional(Scanner scanner, String prompt) {
+        System.out.print(prompt);
+        String answer = scanner.nextLine().trim();
+        return answer.isEmpty() ? null : answer;
+    }
+
+    // This method shows the inventory, sorted
+    private static void displaySortedInventory() {
+        PrintWriter out = consoleWriter(); // Rows are streamed straight from the tree, no copy of the inventory
+
+        out.println("Sorted Inventory:");
+        printInventoryRows(sortedInventoryAfter(null).iterator(), Long.MAX_VALUE, out);
+        out.flush();
+    }
+
     //This is the method we use to display the inventory list
     private static void displayInventoryTable() {
-        List<InventoryItem> inventoryList = new ArrayList<>(); // Let's make a list
-        inOrderTraversal(root, inventoryList); // Let's get the items from the "family tree"
+        PrintWriter out = consoleWriter(); // Let's stream the items from the "family tree"
+        printInventoryRows(sortedInventoryAfter(null).iterator(), Long.MAX_VALUE, out);
+        out.flush();
+    }
 
-        //Let's show the header
-        System.out.println("-----------------------------------------------------------------------------------");
-        System.out.printf("%-12s %-12s %-10s %-15s %-10s\n", "Date Entered", "Stock Label", "Brand", "Engine Number", "Status");
-        System.out.println("-----------------------------------------------------------------------------------");
+    // Show the inventory one page at a time, starting after an engine number
+    private static void browseInventory(Scanner scanner) {
+        String startAfter = askOptional(scanner, "Start after Engine Number (blank for the beginning): ");
+        String pageSizeAnswer = askOptional(scanner, "Rows per page (blank for 20): ");
+        int pageSize;
+        try {
+            pageSize = pageSizeAnswer == null ? 20 : Integer.parseInt(pageSizeAnswer);
+        } catch (NumberFormatException e) {
+            pageSize = 0;
+        }
+        if (pageSize <= 0) {
+            System.out.println("Rows per page must be a positive number.");
+            return;
+        }
 
-        //Let's show each item in the list
-        for (InventoryItem item : inventoryList) {
-            System.out.printf("%-12s %-12s %-10s %-15s %-10s\n", item.dateEntered, item.stockLabel, item.brand, item.engineNumber, item.status);
+        PrintWriter out = consoleWriter();
+        while (true) {
+            // Seek again for every page, so each page costs O(log n + page size)
+            Iterator<InventoryItem> page = sortedInventoryAfter(startAfter).iterator();
+            if (!page.hasNext()) {
+                out.println("No more items.");
+                out.flush();
+                return;
+            }
+            startAfter = printInventoryRows(page, pageSize, out);
+            if (!page.hasNext()) {
+                out.println("End of inventory.");
+                out.flush();
+                return;
+            }
+            out.print("Press Enter for the next page, or type q to stop: ");
+            out.flush();
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                return;
+            }
         }
+    }
 
-        System.out.println("-----------------------------------------------------------------------------------");
+    // Show the items whose engine number starts with a prefix, or falls in a range
+    private static void searchEngineNumberRange(Scanner scanner) {
+        String prefix = askOptional(scanner, "Engine Number prefix (blank to enter a range): ");
+        String from, to;
+        if (prefix != null) {
+            from = prefix;
+            to = prefixEnd(prefix);
+        } else {
+            from = askOptional(scanner, "From Engine Number (blank for the beginning): ");
+            to = askOptional(scanner, "Up to Engine Number, not included (blank for the end): ");
+        }
+
+        PrintWriter out = consoleWriter();
+        out.println("Items found: " + countInRange(from, to)); // Counted from the subtree sizes, before listing anything
+        printInventoryRows(inventoryInRange(from, to).iterator(), Long.MAX_VALUE, out);
+        out.flush();
+    }
+
+    // Look up the item at a position in engine number order, or the position of an engine number
+    private static void findItemByPosition(Scanner scanner) {
+        int total = inventorySize();
+        String positionAnswer = askOptional(scanner, "Position, 1 to " + total + " (blank to look up an Engine Number instead): ");
+        if (positionAnswer != null) {
+            int position;
+            try {
+                position = Integer.parseInt(positionAnswer);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid position.");
+                return;
+            }
+            InventoryItem item = selectByRank(position - 1);
+            if (item == null) {
+                System.out.println("No item at position " + position + ".");
+                return;
+            }
+            PrintWriter out = consoleWriter();
+            printInventoryRows(List.of(item).iterator(), 1, out);
+            out.flush();
+            return;
+        }
+
+        System.out.print("Enter Engine Number: ");
+        String engineNumber = scanner.nextLine();
+        int rank = rankOf(engineNumber);
+        if (itemWithEngineNumber(engineNumber) != null) {
+            System.out.println("Engine Number " + engineNumber + " is at position " + (rank + 1) + " of " + total + ".");
+        } else {
+            System.out.println("Item not found! " + rank + " of " + total + " engine numbers come before it.");
+        }
+    }
+
+    // Print every change from one CSV snapshot to another, then totals per kind of change. Returns false if a file couldn't be read.
+    private static boolean printDiff(String oldFile, String newFile) {
+        PrintWriter out = consoleWriter();
+        Map<InventoryChange.Type, Integer> totals = new EnumMap<>(InventoryChange.Type.class);
+        try {
+            InventoryDiff.diff(Paths.get(oldFile), Paths.get(newFile), change -> {
+                out.println(change);
+                totals.merge(change.getType(), 1, Integer::sum);
+            });
+        } catch (IOException e) {
+            System.err.println("Error comparing inventory files: " + e.getMessage()); // Print error message if a file can't be read
+            e.printStackTrace(); // Print the stack trace for debugging
+            return false;
+        } finally {
+            out.flush();
+        }
+        System.err.println("Diff finished: " + totals.getOrDefault(InventoryChange.Type.ADDED, 0) + " added, "
+                + totals.getOrDefault(InventoryChange.Type.REMOVED, 0) + " removed, "
+                + totals.getOrDefault(InventoryChange.Type.STATUS_CHANGED, 0) + " status changed, "
+                + totals.getOrDefault(InventoryChange.Type.CHANGED, 0) + " changed otherwise");
+        return true;
+    }
+
+    // Search engine numbers typed in (or piped in, one per line) in a sorted CSV file without loading it,
+    // then print how well the cache did: hit ratio and the mean time of a read from the file
+    private static boolean runLookups(String file) {
+        try (InventoryLookup lookup = InventoryLookup.open(Paths.get(file), LOOKUP_CACHE_SIZE, LOOKUP_BLOCK_SIZE)) {
+            csvLookup = lookup;
+            InventoryMetrics.gauge("lookup.hitPercent", () -> Math.round(lookup.hitRatio() * 100));
+            Scanner scanner = new Scanner(System.in);
+            while (true) {
+                System.out.print("Enter Engine Number to search (blank line to stop): ");
+                if (!scanner.hasNextLine()) {
+                    break; // End of piped input
+                }
+                String engineNumber = scanner.nextLine().trim();
+                if (engineNumber.isEmpty()) {
+                    break;
+                }
+                printSearchResult(engineNumber, findItemByEngineNumber(engineNumber));
+            }
+            System.out.println();
+            System.err.println(lookup.stats());
+            if (InventoryMetrics.ENABLED) {
+                InventoryMetrics.dump(System.err); // Miss latency percentiles
+            }
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error looking up items in " + file + ": " + e.getMessage()); // Print error message if the file can't be read or isn't sorted
+            e.printStackTrace(); // Print the stack trace for debugging
+            return false;
+        } finally {
+            csvLookup = null;
+        }
+    }
+
+    // Ask for CSV files and merge them into the inventory
+    private static void mergeFiles(Scanner scanner) {
+        System.out.println("Enter the CSV files to merge, one per line (blank line to finish).");
+        System.out.println("Where an engine number is in more than one place, the item with the latest date entered is kept.");
+        List<String> files = new ArrayList<>();
+        while (true) {
+            System.out.print("File: ");
+            String file = scanner.nextLine().trim();
+            if (file.isEmpty()) {
+                break;
+            }
+            files.add(file);
+        }
+        if (files.isEmpty()) {
+            System.out.println("No files to merge.");
+            return;
+        }
+        mergeInventoryFiles(files);
+    }
+
+    // Merge inventory CSV files (old timestamped saves, branch exports) into the inventory with an external
+    // sort (see InventoryMerge), then save the result as the one snapshot. Returns false if that failed.
+    private static boolean mergeInventoryFiles(List<String> files) {
+        List<Path> paths = new ArrayList<>();
+        for (String file : files) {
+            Path path = Paths.get(file);
+            if (!Files.isRegularFile(path)) {
+                System.err.println("File not found: " + file);
+                return false;
+            }
+            paths.add(path);
+        }
+
+        int[] counts = new int[2]; // Added, replaced
+        long rows;
+        try {
+            if (diskInventory != null) {
+                // Changes go straight into the B+tree. Its cursor finds its place again by key, so that's safe.
+                rows = InventoryMerge.merge(sortedInventoryAfter(null), paths, item -> mergeIntoDisk(item, counts));
+                if (!flushDiskInventory()) {
+                    return false;
+                }
+            } else {
+                List<InventoryItem> merged = new ArrayList<>(inventoryMap.size());
+                rows = InventoryMerge.merge(sortedInventoryAfter(null), paths, merged::add);
+                for (InventoryItem item : merged) {
+                    InventoryItem existing = inventoryMap.get(item.engineNumber);
+                    InventoryChange change = existing == null ? InventoryChange.added(item) : InventoryChange.between(existing, item);
+                    if (change != null) {
+                        counts[existing == null ? 0 : 1]++;
+                        changeFeed.publish(change);
+                    }
+                }
+                bulkLoadInventory(merged); // Already sorted and unique, so the tree is built straight from it
+                if (!inventoryRepository.replaceSnapshot(merged)) {
+                    return false;
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error merging inventory files: " + e.getMessage()); // Print error message if a file can't be read
+            e.printStackTrace(); // Print the stack trace for debugging
+            return false;
+        }
+        System.out.println("Merged " + rows + " rows from " + paths.size() + " files: " + counts[0] + " items added, "
+                + counts[1] + " replaced by a later one, " + inventorySize() + " items in the inventory.");
+        return true;
+    }
+
+    // Put a merged item in the disk inventory if it is new or differs from the one there
+    private static void mergeIntoDisk(InventoryItem item, int[] counts) {
+        try {
+            InventoryItem existing = diskInventory.get(item.engineNumber);
+            InventoryChange change = existing == null ? InventoryChange.added(item) : InventoryChange.between(existing, item);
+            if (change == null) {
+                return;
+            }
+            if (existing != null) {
+                diskInventory.delete(item.engineNumber);
+                reports.remove(existing);
+                counts[1]++;
+            } else {
+                counts[0]++;
+            }
+            diskInventory.add(item);
+            reports.add(item);
+            changeFeed.publish(change);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Show stock by brand and status, on-hand vs sold per month and New vs Old, from the running totals
+    private static void showReports(Scanner scanner) {
+        PrintWriter out = consoleWriter();
+        out.println("Total items: " + reports.itemCount());
+        printReportTable(out, "Stock by Brand and Status", "Brand", reports.countsByBrandAndStatus(), null);
+        printReportTable(out, "Stock by Month Entered and Status", "Month", reports.countsByMonthAndStatus(), null);
+        printReportTable(out, "New vs Old by Brand", "Brand", reports.countsByBrandAndStockLabel(), "New");
+
+        Map<String, Integer> stockLabels = reports.countsByStockLabel();
+        int newCount = stockLabels.getOrDefault("New", 0), oldCount = stockLabels.getOrDefault("Old", 0);
+        out.printf("New vs Old: %d : %d (%s New)\n", newCount, oldCount, percentage(newCount, newCount + oldCount));
+        out.flush();
+
+        System.out.print("Recount everything to check these totals? (Yes/No): ");
+        if (scanner.nextLine().trim().equalsIgnoreCase("yes")) {
+            boolean matches = (diskInventory != null
+                    ? countReports(diskInventory.range(null, false, null))
+                    : InventoryReports.recompute(inventoryMap.values())).matches(reports);
+            System.out.println(matches ? "Recount matches the totals." : "Recount does NOT match the totals!");
+        }
+    }
+
+    // One report as a table: a row per group, a column per value, then the row total.
+    // If shareOf is set, there is also a column with that value's share of the row.
+    private static void printReportTable(PrintWriter out, String title, String rowHeader, Map<String, Map<String, Integer>> rows, String shareOf) {
+        TreeSet<String> columns = new TreeSet<>();
+        for (Map<String, Integer> row : rows.values()) {
+            columns.addAll(row.keySet());
+        }
+
+        out.println();
+        out.println(title + ":");
+        out.println("-----------------------------------------------------------------------------------");
+        out.printf("%-12s", rowHeader);
+        for (String column : columns) {
+            out.printf(" %10s", column);
+        }
+        out.printf(" %10s", "Total");
+        if (shareOf != null) {
+            out.printf(" %10s", "% " + shareOf);
+        }
+        out.println();
+        out.println("-----------------------------------------------------------------------------------");
+        for (Map.Entry<String, Map<String, Integer>> row : rows.entrySet()) {
+            int total = 0;
+            out.printf("%-12s", row.getKey());
+            for (String column : columns) {
+                int count = row.getValue().getOrDefault(column, 0);
+                out.printf(" %10d", count);
+                total += count;
+            }
+            out.printf(" %10d", total);
+            if (shareOf != null) {
+                out.printf(" %10s", percentage(row.getValue().getOrDefault(shareOf, 0), total));
+            }
+            out.println();
+        }
+        out.println("-----------------------------------------------------------------------------------");
+    }
+
+    private static String percentage(int part, int whole) {
+        return whole == 0 ? "-" : String.format("%.1f%%", 100.0 * part / whole);
+    }
+
+    // Print the table header and up to 'limit' rows. Returns the engine number of the last row printed.
+    private static String printInventoryRows(Iterator<InventoryItem> items, long limit, PrintWriter out) {
+        out.println("-----------------------------------------------------------------------------------");
+        out.printf("%-12s %-12s %-10s %-15s %-10s\n", "Date Entered", "Stock Label", "Brand", "Engine Number", "Status");
+        out.println("-----------------------------------------------------------------------------------");
+
+        String lastEngineNumber = null;
+        for (long printed = 0; printed < limit && items.hasNext(); printed++) {
+            InventoryItem item = items.next();
+            out.printf("%-12s %-12s %-10s %-15s %-10s\n", item.dateEntered, item.stockLabel, item.brand, item.engineNumber, item.status);
+            lastEngineNumber = item.engineNumber;
+        }
+
+        out.println("-----------------------------------------------------------------------------------");
+        return lastEngineNumber;
+    }
+
+    // A buffered writer on the console. Not closed by callers, only flushed, because that would close System.out.
+    private static PrintWriter consoleWriter() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+    }
+
+    // --------------------------------------------------------------
+    //  Batch Mode
+    // --------------------------------------------------------------
+
+    // Commands applied together before one save. Longer command streams are saved every this many commands.
+    private static final int BATCH_SIZE = 10_000;
+
+    // Tree changes collected during a batch. The map and indexes are updated right away, so later
+    // commands see earlier ones, but the tree is only changed once per batch.
+    private static class PendingTreeChanges {
+        final TreeMap<String, InventoryItem> adds = new TreeMap<>(); // Items to insert, sorted
+        final TreeSet<String> deletes = new TreeSet<>(); // Engine numbers to take out of the tree
+        final LinkedHashMap<String, InventoryItem> updates = new LinkedHashMap<>(); // Already swapped into the tree, only need saving
+
+        boolean isEmpty() {
+            return adds.isEmpty() && deletes.isEmpty() && updates.isEmpty();
+        }
+
+        // Changes to the shape of the tree
+        int size() {
+            return adds.size() + deletes.size();
+        }
+
+        void clear() {
+            adds.clear();
+            deletes.clear();
+            updates.clear();
+        }
+    }
+
+    // Run commands from a file ("-" for stdin) without the menu or any confirmations. One command per line:
+    //   ADD,<date entered>,<stock label>,<brand>,<engine number>,<status>
+    //   DELETE,<engine number>
+    //   UPDATE,<date entered>,<stock label>,<brand>,<engine number>,<status>
+    //   SOLD,<engine number>
+    //   SEARCH,<engine number>
+    // Blank lines and lines starting with # are skipped. Each command gets one line on stdout:
+    //   <line number>,<result>,<command>,<item>
+    // where result is OK, FOUND, NOT_FOUND, EXISTS or INVALID. A batch's results are written after it is saved.
+    // Returns false if a command was invalid or the changes couldn't be saved.
+    private static boolean runBatch(String source) {
+        boolean succeeded = true;
+        int added = 0, deleted = 0, updated = 0, invalid = 0;
+        PendingTreeChanges changes = new PendingTreeChanges();
+        List<String> results = new ArrayList<>();
+        PrintWriter out = consoleWriter();
+
+        try (BufferedReader reader = source.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(source), StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue; // Nothing to do
+                }
+
+                String result = applyBatchCommand(line, changes);
+                results.add(lineNumber + "," + result);
+                if (result.startsWith("OK,ADD,")) {
+                    added++;
+                } else if (result.startsWith("OK,DELETE,")) {
+                    deleted++;
+                } else if (result.startsWith("OK,UPDATE,") || result.startsWith("OK,SOLD,")) {
+                    updated++;
+                } else if (result.startsWith("INVALID,")) {
+                    invalid++;
+                }
+
+                if (results.size() == BATCH_SIZE) {
+                    succeeded &= flushBatch(changes, results, out);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading batch commands: " + e.getMessage()); // Print error message if the commands can't be read
+            e.printStackTrace(); // Print the stack trace for debugging
+            succeeded = false; // Whatever was read so far is still saved below
+        } catch (UncheckedIOException e) {
+            System.err.println("Error updating the disk inventory: " + e.getMessage()); // Print error message if the B+tree file can't be used
+            e.printStackTrace(); // Print the stack trace for debugging
+            succeeded = false;
+        }
+        succeeded &= flushBatch(changes, results, out);
+
+        System.err.println("Batch finished: " + added + " added, " + deleted + " deleted, " + updated + " updated, " + invalid + " invalid");
+        return succeeded && invalid == 0;
+    }
+
+    // Apply one command to the map and indexes and return its result, without the line number
+    private static String applyBatchCommand(String line, PendingTreeChanges changes) {
+        String[] fields = line.split(",", -1);
+        String command = fields[0].trim().toUpperCase();
+        for (int i = 1; i < fields.length; i++) {
+            if (fields[i].isEmpty()) {
+                return "INVALID," + line; // Every field is needed, and a blank one would break the CSV
+            }
+        }
+
+        switch (command) {
+            case "ADD": {
+                if (fields.length != 6) {
+                    return "INVALID," + line;
+                }
+                InventoryItem existing = itemWithEngineNumber(fields[4]);
+                if (existing != null) {
+                    return "EXISTS,ADD," + existing; // Engine numbers are unique, keep the one we have
+                }
+                InventoryItem item = new InventoryItem(fields[1], fields[2], fields[3], fields[4], fields[5]);
+                if (diskInventory != null) {
+                    try {
+                        diskInventory.add(item); // Saved with the rest of the batch in flushBatch
+                    } catch (IllegalArgumentException e) {
+                        return "INVALID," + line; // Too long to store
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    reports.add(item);
+                    changeFeed.publish(InventoryChange.added(item));
+                    return "OK,ADD," + item;
+                }
+                addItemToInventoryMap(item);
+                changes.adds.put(item.engineNumber, item);
+                changeFeed.publish(InventoryChange.added(item));
+                return "OK,ADD," + item;
+            }
+            case "DELETE": {
+                if (fields.length != 2) {
+                    return "INVALID," + line;
+                }
+                InventoryItem existing = itemWithEngineNumber(fields[1]);
+                if (existing == null) {
+                    return "NOT_FOUND,DELETE," + fields[1];
+                }
+                if (diskInventory != null) {
+                    try {
+                        diskInventory.delete(fields[1]);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    reports.remove(existing);
+                    changeFeed.publish(InventoryChange.removed(existing));
+                    return "OK,DELETE," + existing;
+                }
+                removeItemFromInventoryMap(fields[1]);
+                changeFeed.publish(InventoryChange.removed(existing));
+                changes.updates.remove(fields[1]); // No need to save those now
+                if (changes.adds.remove(fields[1]) == null) {
+                    changes.deletes.add(fields[1]); // It was in the tree before this batch
+                }
+                return "OK,DELETE," + existing;
+            }
+            case "UPDATE":
+            case "SOLD": {
+                if (fields.length != (command.equals("UPDATE") ? 6 : 2)) {
+                    return "INVALID," + line;
+                }
+                String engineNumber = command.equals("UPDATE") ? fields[4] : fields[1];
+                InventoryItem existing = itemWithEngineNumber(engineNumber);
+                if (existing == null) {
+                    return "NOT_FOUND," + command + "," + engineNumber;
+                }
+                InventoryItem updated = command.equals("UPDATE")
+                        ? new InventoryItem(fields[1], fields[2], fields[3], fields[4], fields[5])
+                        : new InventoryItem(existing.dateEntered, existing.stockLabel, existing.brand, engineNumber, SOLD_STATUS);
+                try {
+                    if (applyUpdate(updated) && diskInventory == null) {
+                        if (changes.adds.containsKey(engineNumber)) {
+                            changes.adds.put(engineNumber, updated); // Not saved yet, so it is saved as it is now
+                        } else {
+                            changes.updates.put(engineNumber, updated);
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    return "INVALID," + line; // Too long to store
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return "OK," + command + "," + updated;
+            }
+            case "SEARCH": {
+                if (fields.length != 2) {
+                    return "INVALID," + line;
+                }
+                InventoryItem existing = findItemByEngineNumber(fields[1]);
+                return existing == null ? "NOT_FOUND,SEARCH," + fields[1] : "FOUND,SEARCH," + existing;
+            }
+            default:
+                return "INVALID," + line;
+        }
+    }
+
+    // Bring the tree up to date, save the batch once and print its results. Returns false if saving failed.
+    private static boolean flushBatch(PendingTreeChanges changes, List<String> results, PrintWriter out) {
+        boolean saved = true;
+        if (diskInventory != null) {
+            saved = flushDiskInventory(); // The changes are already in the B+tree, write them out once
+        } else if (!changes.isEmpty()) {
+            applyTreeChanges(changes);
+            saved = saveBatch(changes);
+            changes.clear();
+        }
+
+        for (String result : results) {
+            out.println(result);
+        }
+        out.flush();
+        results.clear();
+        return saved;
+    }
+
+    // k changes one at a time cost O(k log n), rebuilding the tree costs O(n + k log k), so pick the cheaper one
+    private static void applyTreeChanges(PendingTreeChanges changes) {
+        int size = inventoryMap.size();
+        int log2 = 32 - Integer.numberOfLeadingZeros(size);
+        if (changes.size() <= size / Math.max(log2, 1)) {
+            for (String engineNumber : changes.deletes) {
+                deleteFromTree(engineNumber);
+            }
+            for (InventoryItem item : changes.adds.values()) {
+                insertIntoTree(item);
+            }
+            return;
+        }
+
+        // Merge the tree (minus the deletes) with the sorted adds, then build a balanced tree from that
+        List<InventoryItem> merged = new ArrayList<>(size);
+        Iterator<InventoryItem> adds = changes.adds.values().iterator();
+        InventoryItem nextAdd = adds.hasNext() ? adds.next() : null;
+        for (InventoryItem item : sortedInventoryAfter(null)) {
+            while (nextAdd != null && nextAdd.engineNumber.compareTo(item.engineNumber) < 0) {
+                merged.add(nextAdd);
+                nextAdd = adds.hasNext() ? adds.next() : null;
+            }
+            if (!changes.deletes.contains(item.engineNumber)) {
+                merged.add(item);
+            }
+        }
+        while (nextAdd != null) {
+            merged.add(nextAdd);
+            nextAdd = adds.hasNext() ? adds.next() : null;
+        }
+        root = buildBalancedAVL(merged, 0, merged.size());
+    }
+
+    // One save for the whole batch: the journal records share one sync, or one CSV write without the journal
+    private static boolean saveBatch(PendingTreeChanges changes) {
+        if (inventoryRepository.isJournaled()) {
+            // Only the net changes are logged. Deletes go first, so an item deleted and added again ends up added.
+            List<CompletableFuture<Void>> writes = new ArrayList<>(changes.size() + changes.updates.size());
+            for (String engineNumber : changes.deletes) {
+                writes.add(inventoryRepository.logDeleteAsync(engineNumber));
+            }
+            for (InventoryItem item : changes.adds.values()) {
+                writes.add(inventoryRepository.logAddAsync(item));
+            }
+            for (InventoryItem item : changes.updates.values()) {
+                writes.add(inventoryRepository.logUpdateAsync(item));
+            }
+            return inventoryRepository.awaitJournal(CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])));
+        }
+
+        if (changes.deletes.isEmpty() && changes.updates.isEmpty()) {
+            inventoryRepository.addItemsToCSV(changes.adds.values()); // Only adds, append them like addItem does
+        } else {
+            saveInventoryToCSV(inventoryRepository.generateNewFilePath()); // Like deleteItem, but once per batch
+        }
+        return true;
     }
 
     // --------------------------------------------------------------
     //  Helper Methods For Hash Map Implementation
     // --------------------------------------------------------------
     private static void addItemToInventoryMap(InventoryItem item) {
-        inventoryMap.put(item.engineNumber, item); // Store item in the hash map
+        InventoryItem previous = inventoryMap.put(item.engineNumber, item); // Store item in the hash map
+        if (previous != null) {
+            brandIndex.remove(previous); // The old item is no longer in the map
+            queryIndex.remove(previous);
+            reports.remove(previous);
+        }
+        brandIndex.add(item); // Keep the brand index in step with the map
+        queryIndex.add(item); // And the advanced search indexes too
+        reports.add(item); // And the report totals
     }
 
     private static void removeItemFromInventoryMap(String engineNumber) {
-        inventoryMap.remove(engineNumber); // Remove item from the hash map
+        InventoryItem removed = inventoryMap.remove(engineNumber); // Remove item from the hash map
+        if (removed != null) {
+            brandIndex.remove(removed); // Keep the brand index in step with the map
+            queryIndex.remove(removed); // And the advanced search indexes too
+            reports.remove(removed); // And the report totals
+        }
+    }
+
+    // Replaces the tree and the map with the given items in O(n) (plus a sort if they aren't sorted yet).
+    // Duplicate engine numbers are dropped the same way insertIntoAVL does: the first one wins.
+    static void bulkLoadInventory(List<InventoryItem> items) {
+        List<InventoryItem> sortedItems = sortedUniqueByEngineNumber(items);
+
+        inventoryMap = HashMap.newHashMap(sortedItems.size()); // Pre-sized, so it never has to rehash
+        brandIndex = new BrandIndex(); // Filled by addItemToInventoryMap below
+        queryIndex = new InventoryQueryIndex();
+        reports = new InventoryReports();
+        for (InventoryItem item : sortedItems) {
+            addItemToInventoryMap(item);
+        }
+        root = buildBalancedAVL(sortedItems, 0, sortedItems.size());
+    }
+
+    // Returns the items sorted by engine number with duplicates removed, keeping the first occurrence of each.
+    private static List<InventoryItem> sortedUniqueByEngineNumber(List<InventoryItem> items) {
+        boolean sorted = true; // Saved snapshots are already sorted, so check before paying for a sort
+        for (int i = 1; i < items.size() && sorted; i++) {
+            sorted = items.get(i - 1).engineNumber.compareTo(items.get(i).engineNumber) <= 0;
+        }
+
+        List<InventoryItem> sortedItems = items;
+        if (!sorted) {
+            sortedItems = new ArrayList<>(items);
+            sortedItems.sort(Comparator.comparing(item -> item.engineNumber)); // Stable, so the first duplicate stays first
+        }
+
+        List<InventoryItem> uniqueItems = new ArrayList<>(sortedItems.size());
+        for (InventoryItem item : sortedItems) {
+            if (uniqueItems.isEmpty() || !uniqueItems.get(uniqueItems.size() - 1).engineNumber.equals(item.engineNumber)) {
+                uniqueItems.add(item);
+            }
+        }
+        return uniqueItems;
+    }
+
+    // Add a new item to the tree, the map and the indexes, and save it.
+    // The future completes with false if the engine number is taken, or with true once the item is saved.
+    // With the journal, saving happens in the background so writers can share a sync.
+    static CompletableFuture<Boolean> addInventoryItem(InventoryItem newItem) {
+        if (diskInventory != null) {
+            try {
+                boolean added = diskInventory.add(newItem);
+                if (added) {
+                    reports.add(newItem);
+                    diskInventory.flush(); // Saved once the pages are on disk
+                    changeFeed.publish(InventoryChange.added(newItem));
+                }
+                return CompletableFuture.completedFuture(added);
+            } catch (IOException | IllegalArgumentException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        if (inventoryMap.containsKey(newItem.engineNumber)) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        CompletableFuture<Void> saved;
+        if (inventoryRepository.isJournaled()) {
+            saved = inventoryRepository.logAddAsync(newItem); // Add the new item to the journal
+        } else {
+            inventoryRepository.addItemToCSV(newItem); // Add the new item to the CSV file
+            saved = CompletableFuture.completedFuture(null);
+        }
+
+        insertIntoTree(newItem); // Add the new item to the AVL tree
+        addItemToInventoryMap(newItem); // Add the new item to the inventory map
+        changeFeed.publishWhenSaved(InventoryChange.added(newItem), saved); // Still in the order the changes are made
+        return saved.thenApply(ignored -> true);
+    }
+
+    // Delete an item from the tree, the map and the indexes, and save that.
+    // The future completes with the deleted item once it is saved, or with null if there was no such item.
+    static CompletableFuture<InventoryItem> deleteInventoryItem(String engineNumber) {
+        if (diskInventory != null) {
+            try {
+                InventoryItem deleted = diskInventory.delete(engineNumber);
+                if (deleted != null) {
+                    reports.remove(deleted);
+                    diskInventory.flush();
+                    changeFeed.publish(InventoryChange.removed(deleted));
+                }
+                return CompletableFuture.completedFuture(deleted);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        InventoryItem item = inventoryMap.get(engineNumber);
+        if (item == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        deleteFromTree(engineNumber); // Delete the item from the AVL tree
+        removeItemFromInventoryMap(engineNumber); // Remove the item from the inventory map
+
+        CompletableFuture<Void> saved;
+        if (inventoryRepository.isJournaled()) {
+            saved = inventoryRepository.logDeleteAsync(engineNumber); // Record the delete in the journal
+        } else {
+            String newFilePath = inventoryRepository.generateNewFilePath();
+            saveInventoryToCSV(newFilePath);  // Save the updated inventory to CSV
+            saved = CompletableFuture.completedFuture(null);
+        }
+        changeFeed.publishWhenSaved(InventoryChange.removed(item), saved);
+        return saved.thenApply(ignored -> item);
+    }
+
+    // Change an item's other fields to those of updated (same engine number). The tree keeps its shape: the node
+    // just gets the new item, and the map, indexes and reports move it to its new groups. Only the change is
+    // saved, not the whole inventory. The future completes with the item as it was once the change is saved,
+    // or with null if there was no such item.
+    static CompletableFuture<InventoryItem> updateInventoryItem(InventoryItem updated) {
+        InventoryItem previous = itemWithEngineNumber(updated.engineNumber);
+        if (previous == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return saveUpdates(List.of(updated)).thenApply(ignored -> previous);
+    }
+
+    // Mark items Sold, saving them all at once: one journal sync, one B+tree flush or one CSV write.
+    // The future completes with how many were changed. Ones that aren't there or are sold already are skipped.
+    static CompletableFuture<Integer> markItemsSold(Collection<String> engineNumbers) {
+        List<InventoryItem> updates = new ArrayList<>(engineNumbers.size());
+        for (String engineNumber : engineNumbers) {
+            InventoryItem item = itemWithEngineNumber(engineNumber);
+            if (item != null) {
+                updates.add(new InventoryItem(item.dateEntered, item.stockLabel, item.brand, item.engineNumber, SOLD_STATUS));
+            }
+        }
+        return saveUpdates(updates);
+    }
+
+    // Apply updates and save the ones that changed something together. Completes with how many did.
+    private static CompletableFuture<Integer> saveUpdates(List<InventoryItem> updates) {
+        List<InventoryItem> changed = new ArrayList<>(updates.size());
+        try {
+            for (InventoryItem updated : updates) {
+                if (applyUpdate(updated)) {
+                    changed.add(updated);
+                }
+            }
+            if (changed.isEmpty()) {
+                return CompletableFuture.completedFuture(0);
+            }
+            if (diskInventory != null) {
+                diskInventory.flush();
+                return CompletableFuture.completedFuture(changed.size());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (inventoryRepository.isJournaled()) {
+            List<CompletableFuture<Void>> writes = new ArrayList<>(changed.size());
+            for (InventoryItem item : changed) {
+                writes.add(inventoryRepository.logUpdateAsync(item)); // Queued together, so they share a sync
+            }
+            return CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> changed.size());
+        }
+        saveInventoryToCSV(inventoryRepository.generateNewFilePath()); // Like deleteItem
+        return CompletableFuture.completedFuture(changed.size());
+    }
+
+    // Swap an updated item in for the one with its engine number, without saving it.
+    // Returns false if there is no such item or nothing changed.
+    private static boolean applyUpdate(InventoryItem updated) throws IOException {
+        InventoryItem previous = itemWithEngineNumber(updated.engineNumber);
+        InventoryChange change = previous == null ? null : InventoryChange.between(previous, updated);
+        if (change == null) {
+            return false;
+        }
+        if (diskInventory != null) {
+            diskInventory.update(updated);
+            reports.remove(previous);
+            reports.add(updated);
+        } else {
+            replaceInTree(updated);
+            addItemToInventoryMap(updated); // Takes the old one out of the indexes and reports first
+        }
+        changeFeed.publish(change);
+        return true;
+    }
+
+    // Put an item in the place of the one with the same engine number. No rotations, the tree keeps its shape.
+    private static void replaceInTree(InventoryItem updated) {
+        TreeNode node = root;
+        while (node != null) {
+            int comparison = updated.engineNumber.compareTo(node.item.engineNumber);
+            if (comparison == 0) {
+                node.item = updated;
+                return;
+            }
+            node = comparison < 0 ? node.left : node.right;
+        }
+    }
+
+    static InventoryItem findItemByEngineNumber(String engineNumber) {
+        long start = InventoryMetrics.now();
+        InventoryItem item = itemWithEngineNumber(engineNumber);
+        InventoryMetrics.SEARCH_ENGINE_NUMBER.record(start);
+        return item;
+    }
+
+    // Lookup without the timing, from the map, the disk inventory or the --lookup file
+    private static InventoryItem itemWithEngineNumber(String engineNumber) {
+        if (diskInventory == null && csvLookup == null) {
+            return inventoryMap.get(engineNumber);
+        }
+        try {
+            return diskInventory != null ? diskInventory.get(engineNumber) : csvLookup.find(engineNumber);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // How many items there are
+    static int inventorySize() {
+        return diskInventory != null ? (int) Math.min(diskInventory.size(), Integer.MAX_VALUE) : inventoryMap.size();
+    }
+
+    // Write the disk inventory's changes out. Returns false if that failed.
+    private static boolean flushDiskInventory() {
+        try {
+            diskInventory.flush();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving the disk inventory: " + e.getMessage()); // Print error message if the file can't be written
+            e.printStackTrace(); // Print the stack trace for debugging
+            return false;
+        }
+    }
+
+    // Every item of a brand (ignoring case), sorted by engine number
+    static List<InventoryItem> findItemsByBrand(String brand) {
+        long start = InventoryMetrics.now();
+        List<InventoryItem> items = new ArrayList<>();
+        if (diskInventory != null) {
+            for (InventoryItem item : diskInventory.range(null, false, null)) { // No brand index on disk, look at every item
+                if (item.brand.equalsIgnoreCase(brand)) {
+                    items.add(item);
+                }
+            }
+            InventoryMetrics.SEARCH_BRAND.record(start);
+            return items;
+        }
+        for (String engineNumber : brandIndex.engineNumbers(brand)) {
+            items.add(inventoryMap.get(engineNumber));
+        }
+        InventoryMetrics.SEARCH_BRAND.record(start);
+        return items;
+    }
+
+    // The items in engine-number order, starting right after startAfter (null for the first item).
+    // Walks the tree lazily, so nothing is copied and stopping early costs nothing.
+    static Iterable<InventoryItem> sortedInventoryAfter(String startAfter) {
+        if (diskInventory != null) {
+            return diskInventory.range(startAfter, false, null); // Reads a leaf page at a time
+        }
+        TreeNode start = root;
+        return () -> new InventoryCursor(start, startAfter, false, null);
     }
 
-    private static List<InventoryItem> getSortedInventory() {
+    // The items with from <= engine number < to, in order. Either end can be null for no limit.
+    // Walks only the part of the tree that is needed: O(log n + k) for k items.
+    static Iterable<InventoryItem> inventoryInRange(String from, String to) {
+        if (diskInventory != null) {
+            return diskInventory.range(from, true, to);
+        }
+        TreeNode start = root;
+        return () -> new InventoryCursor(start, from, true, to);
+    }
+
+    // The items whose engine number starts with prefix, in order
+    static Iterable<InventoryItem> inventoryWithPrefix(String prefix) {
+        return inventoryInRange(prefix, prefixEnd(prefix));
+    }
+
+    // How many items have from <= engine number < to, in O(log n) without visiting them
+    static int countInRange(String from, String to) {
+        if (diskInventory != null) {
+            return countItems(inventoryInRange(from, to)); // The B+tree doesn't keep counts, so count them: O(k)
+        }
+        int end = to == null ? inventoryMap.size() : rankOf(to);
+        int start = from == null ? 0 : rankOf(from);
+        return Math.max(end - start, 0);
+    }
+
+    static int countWithPrefix(String prefix) {
+        return countInRange(prefix, prefixEnd(prefix));
+    }
+
+    // How many items have a smaller engine number. For an item in the inventory, that is its 0-based position.
+    static int rankOf(String engineNumber) {
+        if (diskInventory != null) {
+            return countItems(inventoryInRange(null, engineNumber)); // O(n) on disk
+        }
+        int rank = 0;
+        TreeNode node = root;
+        while (node != null) {
+            int comparison = engineNumber.compareTo(node.item.engineNumber);
+            if (comparison <= 0) {
+                node = node.left;
+            } else {
+                rank += subtreeSize(node.left) + 1; // The left side and this node are all smaller
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    // The item at a 0-based position in engine number order, or null if there is none. O(log n).
+    static InventoryItem selectByRank(int rank) {
+        if (rank < 0 || rank >= inventorySize()) {
+            return null;
+        }
+        if (diskInventory != null) {
+            Iterator<InventoryItem> items = sortedInventoryAfter(null).iterator(); // O(n) on disk
+            for (int skipped = 0; skipped < rank; skipped++) {
+                items.next();
+            }
+            return items.next();
+        }
+        TreeNode node = root;
+        while (true) {
+            int leftSize = subtreeSize(node.left);
+            if (rank < leftSize) {
+                node = node.left;
+            } else if (rank == leftSize) {
+                return node.item;
+            } else {
+                rank -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private static int countItems(Iterable<InventoryItem> items) {
+        int count = 0;
+        for (Iterator<InventoryItem> iterator = items.iterator(); iterator.hasNext(); iterator.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    // The smallest string that comes after everything starting with prefix, or null if there is none
+    // (String compares by char, so bump the last char that isn't already the largest one)
+    private static String prefixEnd(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; i--) {
+            char c = prefix.charAt(i);
+            if (c != Character.MAX_VALUE) {
+                return prefix.substring(0, i) + (char) (c + 1);
+            }
+        }
+        return null;
+    }
+
+    static List<InventoryItem> getSortedInventory() {
         List<InventoryItem> inventoryList = new ArrayList<>(); // Let's make a list
         inOrderTraversal(root, inventoryList); // Let's get the items from the AVL tree
         return inventoryList;
@@ -273,11 +1534,29 @@ public class InventoryManagement {
     //   Methods for AVL Tree Implementation
     // --------------------------------------------------------------
 
+    // Insert into the tree, timed. Changes to the tree go through here and deleteFromTree.
+    private static void insertIntoTree(InventoryItem item) {
+        long start = InventoryMetrics.now();
+        root = insertIntoAVL(root, item);
+        InventoryMetrics.AVL_INSERT.record(start);
+    }
+
+    private static void deleteFromTree(String engineNumber) {
+        long start = InventoryMetrics.now();
+        root = deleteFromAVL(root, engineNumber);
+        InventoryMetrics.AVL_DELETE.record(start);
+    }
+
     // Helper method to get the height of a node
     private static int height(TreeNode node) {
         return node == null ? 0 : node.height;
     }
 
+    // Helper method to get the number of items in a subtree
+    private static int subtreeSize(TreeNode node) {
+        return node == null ? 0 : node.size;
+    }
+
     // Helper method to calculate balance factor
     private static int getBalance(TreeNode node) {
         return node == null ? 0 : height(node.left) - height(node.right);
@@ -285,6 +1564,7 @@ public class InventoryManagement {
 
     // Right rotation
     private static TreeNode rightRotate(TreeNode y) {
+        InventoryMetrics.RIGHT_ROTATIONS.increment();
         TreeNode x = y.left;
         TreeNode T2 = x.right;
 
@@ -292,15 +1572,18 @@ public class InventoryManagement {
         x.right = y;
         y.left = T2;
 
-        // Update heights
+        // Update heights and sizes
         y.height = Math.max(height(y.left), height(y.right)) + 1;
         x.height = Math.max(height(x.left), height(x.right)) + 1;
+        y.size = subtreeSize(y.left) + subtreeSize(y.right) + 1;
+        x.size = subtreeSize(x.left) + subtreeSize(x.right) + 1;
 
         return x; // Return new root
     }
 
     // Left rotation
     private static TreeNode leftRotate(TreeNode x) {
+        InventoryMetrics.LEFT_ROTATIONS.increment();
         TreeNode y = x.right;
         TreeNode T2 = y.left;
 
@@ -308,140 +1591,258 @@ public class InventoryManagement {
         y.left = x;
         x.right = T2;
 
-        // Update heights
+        // Update heights and sizes
         x.height = Math.max(height(x.left), height(x.right)) + 1;
         y.height = Math.max(height(y.left), height(y.right)) + 1;
+        x.size = subtreeSize(x.left) + subtreeSize(x.right) + 1;
+        y.size = subtreeSize(y.left) + subtreeSize(y.right) + 1;
 
         return y; // Return new root
     }
 
-    // Insert into AVL tree
-    private static TreeNode insertIntoAVL(TreeNode node, InventoryItem item) {
-        if (node == null) {
-            return new TreeNode(item);
-        }
-
-        if (item.engineNumber.compareTo(node.item.engineNumber) < 0) {
-            node.left = insertIntoAVL(node.left, item);
-        } else if (item.engineNumber.compareTo(node.item.engineNumber) > 0) {
-            node.right = insertIntoAVL(node.right, item);
-        } else {
-            // Duplicate keys not allowed
-            return node;
+    // Build a perfectly balanced AVL tree from sortedItems[from, to) (sorted by engine number, no duplicates).
+    // Children are built before their parent, so every height is correct without any rotations.
+    private static TreeNode buildBalancedAVL(List<InventoryItem> sortedItems, int from, int to) {
+        if (from >= to) {
+            return null;
         }
 
-        // Update height of current node
+        int middle = (from + to) >>> 1;
+        TreeNode node = new TreeNode(sortedItems.get(middle));
+        node.left = buildBalancedAVL(sortedItems, from, middle);
+        node.right = buildBalancedAVL(sortedItems, middle + 1, to);
         node.height = Math.max(height(node.left), height(node.right)) + 1;
+        node.size = to - from;
+        return node;
+    }
 
-        // Check balance factor and rotate if necessary
-        int balance = getBalance(node);
+    // Insert into AVL tree. Goes down once, comparing one engine number per level, and then fixes the path
+    // from the top without comparing again. Only the deepest node on the path that wasn't balanced can end up
+    // out of balance: the nodes below it were balanced and just get one taller, and once it is rotated (or
+    // evened out) the nodes above it keep their height. So at most one rotation, at that node, and the same
+    // tree as inserting recursively and rebalancing on the way back up.
+    static TreeNode insertIntoAVL(TreeNode root, InventoryItem item) {
+        if (root == null) {
+            return new TreeNode(item);
+        }
 
-        // Left Left Case
-        if (balance > 1 && item.engineNumber.compareTo(node.left.item.engineNumber) < 0) {
-            return rightRotate(node);
+        String engineNumber = item.engineNumber;
+        long turns = 0; // Bit i is set if the way down goes right at depth i. 64 levels is more items than fit in memory.
+        int depth = 0;
+        TreeNode parent = null;
+        TreeNode top = root; // The deepest node that wasn't balanced, or the root if all of them were
+        TreeNode aboveTop = null;
+        int topDepth = 0;
+        for (TreeNode node = root; node != null; depth++) {
+            int comparison = engineNumber.compareTo(node.item.engineNumber);
+            if (comparison == 0) {
+                return root; // Duplicate keys not allowed
+            }
+            if (height(node.left) != height(node.right)) {
+                top = node;
+                aboveTop = parent;
+                topDepth = depth;
+            }
+            parent = node;
+            if (comparison > 0) {
+                turns |= 1L << depth;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
         }
 
-        // Right Right Case
-        if (balance < -1 && item.engineNumber.compareTo(node.right.item.engineNumber) > 0) {
-            return leftRotate(node);
+        TreeNode newNode = new TreeNode(item);
+        if (goesRight(turns, depth - 1)) {
+            parent.right = newNode;
+        } else {
+            parent.left = newNode;
         }
 
-        // Left Right Case
-        if (balance > 1 && item.engineNumber.compareTo(node.left.item.engineNumber) > 0) {
-            node.left = leftRotate(node.left);
-            return rightRotate(node);
+        // Every node on the path holds one more item, and the ones below top are one taller
+        TreeNode node = root;
+        for (int level = 0; level < depth; level++) {
+            node.size++;
+            if (level > topDepth) {
+                node.height++;
+            }
+            node = goesRight(turns, level) ? node.right : node.left;
         }
 
-        // Right Left Case
-        if (balance < -1 && item.engineNumber.compareTo(node.right.item.engineNumber) < 0) {
-            node.right = rightRotate(node.right);
-            return leftRotate(node);
+        // Now rebalance top if it needs it. Which rotation is the way the new item went below it.
+        TreeNode subtree = top;
+        int balance = height(top.left) - height(top.right);
+        if (balance > 1) {
+            if (goesRight(turns, topDepth + 1)) {
+                top.left = leftRotate(top.left); // Left Right Case
+            }
+            subtree = rightRotate(top); // Left Left Case
+        } else if (balance < -1) {
+            if (!goesRight(turns, topDepth + 1)) {
+                top.right = rightRotate(top.right); // Right Left Case
+            }
+            subtree = leftRotate(top); // Right Right Case
+        } else {
+            top.height = Math.max(height(top.left), height(top.right)) + 1;
         }
 
-        return node; // Return unchanged node pointer
+        if (aboveTop == null) {
+            return subtree;
+        }
+        if (subtree != top) {
+            if (goesRight(turns, topDepth - 1)) {
+                aboveTop.right = subtree;
+            } else {
+                aboveTop.left = subtree;
+            }
+        }
+        return root;
     }
 
-    // Delete from AVL tree
-    private static TreeNode deleteFromAVL(TreeNode root, String engineNumber) {
+    // Delete from AVL tree. Goes down once, comparing one engine number per level, keeping the nodes on the way
+    // in a small array. On the way back up every one holds one item less, but heights and balance only need
+    // fixing until a subtree comes out as tall as it was. Same tree as deleting recursively.
+    static TreeNode deleteFromAVL(TreeNode root, String engineNumber) {
         if (root == null) {
             return null;
         }
 
-        if (engineNumber.compareTo(root.item.engineNumber) < 0) {
-            root.left = deleteFromAVL(root.left, engineNumber);
-        } else if (engineNumber.compareTo(root.item.engineNumber) > 0) {
-            root.right = deleteFromAVL(root.right, engineNumber);
-        } else {
-            // Node with the item to delete found
-
-            // Node with only one child or no child
-            if ((root.left == null) || (root.right == null)) {
-                TreeNode temp = (root.left != null) ? root.left : root.right;
-
-                // No child case
-                if (temp == null) {
-                    temp = root;
-                    root = null;
-                } else {
-                    root = temp; // Copy contents of non-empty child
-                }
+        TreeNode[] path = new TreeNode[root.height]; // The nodes above the one that is taken out
+        long turns = 0; // Bit i is set if the way down goes right at depth i
+        int depth = 0;
+        TreeNode node = root;
+        while (true) {
+            int comparison = engineNumber.compareTo(node.item.engineNumber);
+            if (comparison == 0) {
+                break;
+            }
+            path[depth] = node;
+            if (comparison > 0) { // A branch, not "? :", so the CPU can start on the next node before the compare is done
+                turns |= 1L << depth;
+                node = node.right;
             } else {
-                // Node with two children: Get the inorder successor (smallest in the right subtree)
-                InventoryItem tempItem = minValue(root.right).item;
-
-                // Copy the inorder successor's data to this node
-                root.item = tempItem;
-
-                // Delete the inorder successor
-                root.right = deleteFromAVL(root.right, tempItem.engineNumber);
+                node = node.left;
+            }
+            depth++;
+            if (node == null) {
+                return root; // Not in the tree
             }
         }
 
-        // If the tree had only one node then return
-        if (root == null) {
-            return null;
+        if (node.left != null && node.right != null) {
+            // Node with two children: copy the inorder successor (smallest in the right subtree) here
+            // and take the successor's node out instead
+            TreeNode found = node;
+            turns |= 1L << depth;
+            path[depth++] = node;
+            node = node.right;
+            while (node.left != null) {
+                path[depth++] = node;
+                node = node.left;
+            }
+            found.item = node.item;
         }
 
-        // Update height of the current node
-        root.height = Math.max(height(root.left), height(root.right)) + 1;
-
-        // Get the balance factor of this node (to check whether this node became unbalanced)
-        int balance = getBalance(root);
-
-        // Left Left Case
-        if (balance > 1 && getBalance(root.left) >= 0) {
-            return rightRotate(root);
+        // Node with only one child or no child: its child takes its place
+        TreeNode child = node.left != null ? node.left : node.right;
+        if (depth == 0) {
+            return child;
+        }
+        if (goesRight(turns, depth - 1)) {
+            path[depth - 1].right = child;
+        } else {
+            path[depth - 1].left = child;
         }
 
-        // Left Right Case
-        if (balance > 1 && getBalance(root.left) < 0) {
-            root.left = leftRotate(root.left);
-            return rightRotate(root);
+        boolean settled = false; // A subtree kept its height, so nothing above it needs rebalancing
+        for (int level = depth - 1; level >= 0; level--) {
+            node = path[level];
+            node.size--;
+            if (settled) {
+                continue;
+            }
+            int oldHeight = node.height;
+            TreeNode subtree = rebalance(node);
+            if (subtree != node) {
+                if (level == 0) {
+                    root = subtree;
+                } else if (goesRight(turns, level - 1)) {
+                    path[level - 1].right = subtree;
+                } else {
+                    path[level - 1].left = subtree;
+                }
+            }
+            settled = subtree.height == oldHeight;
         }
+        return root;
+    }
 
-        // Right Right Case
-        if (balance < -1 && getBalance(root.right) <= 0) {
-            return leftRotate(root);
+    // Whether the way down goes right at this depth
+    private static boolean goesRight(long turns, int depth) {
+        return (turns >>> depth & 1) != 0;
+    }
+
+    // Update a node's height after one of its subtrees got shorter, and rotate it if it is out of balance.
+    // Returns the node that takes its place.
+    private static TreeNode rebalance(TreeNode node) {
+        int balance = getBalance(node);
+
+        // Left Left Case, or Left Right Case
+        if (balance > 1) {
+            if (getBalance(node.left) < 0) {
+                node.left = leftRotate(node.left);
+            }
+            return rightRotate(node);
         }
 
-        // Right Left Case
-        if (balance < -1 && getBalance(root.right) > 0) {
-            root.right = rightRotate(root.right);
-            return leftRotate(root);
+        // Right Right Case, or Right Left Case
+        if (balance < -1) {
+            if (getBalance(node.right) > 0) {
+                node.right = rightRotate(node.right);
+            }
+            return leftRotate(node);
         }
 
-        return root;
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        return node;
     }
 
-    private static TreeNode minValue(TreeNode node) {
-        TreeNode current = node;
+    // In-order iterator over the AVL tree with an explicit stack: no recursion, and only
+    // O(height) memory. The tree must not be changed while a cursor is in use.
+    private static class InventoryCursor implements Iterator<InventoryItem> {
+        private final ArrayDeque<TreeNode> stack = new ArrayDeque<>(); // Nodes whose item still has to be returned
+        private final String end; // Stop before this engine number, null to go to the end
+
+        // Position the cursor on the first item after start (or at it, if includeStart), in O(log n)
+        InventoryCursor(TreeNode node, String start, boolean includeStart, String end) {
+            this.end = end;
+            while (node != null) {
+                int comparison = start == null ? 1 : node.item.engineNumber.compareTo(start);
+                if (comparison > 0 || (comparison == 0 && includeStart)) {
+                    stack.push(node); // This one comes later, but first look at the smaller ones on the left
+                    node = node.left;
+                } else {
+                    node = node.right; // This one and its left side are all too small
+                }
+            }
+        }
 
-        /* loop down to find the leftmost leaf */
-        while (current.left != null) {
-            current = current.left;
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty() && (end == null || stack.peek().item.engineNumber.compareTo(end) < 0);
         }
 
-        return current;
+        @Override
+        public InventoryItem next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TreeNode node = stack.pop();
+            for (TreeNode child = node.right; child != null; child = child.left) {
+                stack.push(child); // The next items are the leftmost path of the right subtree
+            }
+            return node.item;
+        }
     }
 
     //This is the method to in order traversal
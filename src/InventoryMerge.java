@@ -0,0 +1,167 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+// Merges inventory CSV files (old timestamped saves, branch exports) with the current inventory into one
+// stream sorted by engine number. When an engine number turns up more than once, the item with the latest
+// date entered wins. On the same date the one read last wins: the files are read in the order given,
+// after the current inventory. Dates that can't be read count as older than any other.
+//
+// The files don't have to be sorted. Their rows are read into runs of RUN_SIZE items, and each run is
+// sorted and has its own duplicates dropped. Full runs are spilled to temp files, the last one stays in
+// memory. Then the current inventory and all the runs are merged k ways through a priority queue, so
+// about one run is in memory however big the files are.
+public class InventoryMerge {
+
+    static final int RUN_SIZE = Integer.getInteger("inventory.merge.runSize", 500_000);
+
+    // By engine number, latest date first
+    private static final Comparator<InventoryManagement.InventoryItem> ITEM_ORDER =
+            Comparator.comparing((InventoryManagement.InventoryItem item) -> item.engineNumber)
+                    .thenComparing(Comparator.comparingInt((InventoryManagement.InventoryItem item) -> InventoryQueryIndex.packDate(item.dateEntered)).reversed());
+
+    // The same, then the run read last first
+    private static final Comparator<Run> RUN_ORDER =
+            Comparator.comparing((Run run) -> run.current, ITEM_ORDER).thenComparing(Comparator.comparingInt((Run run) -> run.order).reversed());
+
+    // One sorted input to the merge, and the item it is at
+    private static class Run {
+        final Iterator<InventoryManagement.InventoryItem> items;
+        final int order; // Later runs win ties
+        InventoryManagement.InventoryItem current;
+
+        Run(Iterator<InventoryManagement.InventoryItem> items, int order) {
+            this.items = items;
+            this.order = order;
+        }
+
+        boolean advance() {
+            current = items.hasNext() ? items.next() : null;
+            return current != null;
+        }
+    }
+
+    // Merge the files into the inventory (sorted by engine number, no duplicates) and hand each resulting
+    // item to merged, in engine number order. Returns how many rows were read from the files.
+    public static long merge(Iterable<InventoryManagement.InventoryItem> inventory, List<Path> csvFiles,
+                             Consumer<InventoryManagement.InventoryItem> merged) throws IOException {
+        List<Path> spills = new ArrayList<>();
+        List<DataInputStream> spillInputs = new ArrayList<>();
+        try {
+            List<Run> runs = new ArrayList<>();
+            runs.add(new Run(inventory.iterator(), 0)); // Already sorted and unique
+
+            long rows = 0;
+            List<InventoryManagement.InventoryItem> buffer = new ArrayList<>();
+            for (Path file : csvFiles) {
+                // Read like InventoryRepository.forEachItemInCSV: skip the header, keep rows with exactly 5 fields
+                try (BufferedReader reader = new BufferedReader(new FileReader(file.toFile()))) {
+                    reader.readLine();
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String[] data = line.split(",");
+                        if (data.length != 5) {
+                            continue;
+                        }
+                        buffer.add(new InventoryManagement.InventoryItem(data[0], data[1], data[2], data[3], data[4]));
+                        rows++;
+                        if (buffer.size() == RUN_SIZE) {
+                            Path spill = Files.createTempFile("inventory-merge", ".run");
+                            spills.add(spill);
+                            writeRun(spill, sortRun(buffer));
+                            DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(spill)));
+                            spillInputs.add(input);
+                            runs.add(new Run(readRun(input), runs.size()));
+                            buffer = new ArrayList<>();
+                        }
+                    }
+                }
+            }
+            if (!buffer.isEmpty()) {
+                runs.add(new Run(sortRun(buffer).iterator(), runs.size()));
+            }
+
+            PriorityQueue<Run> queue = new PriorityQueue<>(runs.size(), RUN_ORDER);
+            for (Run run : runs) {
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+            String previous = null;
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                if (!run.current.engineNumber.equals(previous)) {
+                    merged.accept(run.current); // The first of each engine number is the winner
+                    previous = run.current.engineNumber;
+                }
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+            return rows;
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // From reading a spilled run
+        } finally {
+            for (DataInputStream input : spillInputs) {
+                input.close();
+            }
+            for (Path spill : spills) {
+                Files.deleteIfExists(spill);
+            }
+        }
+    }
+
+    // Sort a run and drop its duplicates. It is reversed first so that, the sort being stable,
+    // the row read last comes first among rows with the same engine number and date.
+    private static List<InventoryManagement.InventoryItem> sortRun(List<InventoryManagement.InventoryItem> buffer) {
+        Collections.reverse(buffer);
+        buffer.sort(ITEM_ORDER);
+        List<InventoryManagement.InventoryItem> unique = new ArrayList<>(buffer.size());
+        for (InventoryManagement.InventoryItem item : buffer) {
+            if (unique.isEmpty() || !unique.get(unique.size() - 1).engineNumber.equals(item.engineNumber)) {
+                unique.add(item);
+            }
+        }
+        return unique;
+    }
+
+    // A spilled run is its item count, then each item's five fields with writeUTF
+    private static void writeRun(Path path, List<InventoryManagement.InventoryItem> items) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            output.writeInt(items.size());
+            for (InventoryManagement.InventoryItem item : items) {
+                output.writeUTF(item.dateEntered);
+                output.writeUTF(item.stockLabel);
+                output.writeUTF(item.brand);
+                output.writeUTF(item.engineNumber);
+                output.writeUTF(item.status);
+            }
+        }
+    }
+
+    private static Iterator<InventoryManagement.InventoryItem> readRun(DataInputStream input) throws IOException {
+        int count = input.readInt();
+        return new Iterator<>() {
+            private int read;
+
+            @Override
+            public boolean hasNext() {
+                return read < count;
+            }
+
+            @Override
+            public InventoryManagement.InventoryItem next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                read++;
+                try {
+                    return new InventoryManagement.InventoryItem(input.readUTF(), input.readUTF(), input.readUTF(), input.readUTF(), input.readUTF());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+}
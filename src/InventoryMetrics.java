@@ -0,0 +1,276 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Timings and counters for the hot paths: loading, saving, tree changes and searches.
+// Off unless the program is started with -Dinventory.metrics=true. ENABLED is a constant, so when it is
+// false the JIT removes the checks and timing costs nothing. When on, every metric is also published
+// over JMX under "motorph.inventory" and printed to stderr every inventory.metrics.dumpSeconds (default 60, 0 for never).
+//
+//   long start = InventoryMetrics.now();
+//   ... the work ...
+//   InventoryMetrics.AVL_INSERT.record(start);
+public class InventoryMetrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("inventory.metrics");
+    private static final long DUMP_SECONDS = Long.getLong("inventory.metrics.dumpSeconds", 60);
+    private static final String JMX_DOMAIN = "motorph.inventory";
+
+    private static final List<Timer> timers = new CopyOnWriteArrayList<>();
+    private static final List<Counter> counters = new CopyOnWriteArrayList<>();
+    private static final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+
+    public static final Timer CSV_LOAD = new Timer("csv.load");
+    public static final Timer CSV_SAVE = new Timer("csv.save");
+    public static final Timer CSV_APPEND = new Timer("csv.append");
+    public static final Timer JOURNAL_WRITE = new Timer("journal.write"); // From queueing a record until it is synced
+    public static final Timer AVL_INSERT = new Timer("avl.insert");
+    public static final Timer AVL_DELETE = new Timer("avl.delete");
+    public static final Timer SEARCH_ENGINE_NUMBER = new Timer("search.engineNumber");
+    public static final Timer SEARCH_BRAND = new Timer("search.brand");
+    public static final Timer SEARCH_ADVANCED = new Timer("search.advanced");
+    public static final Timer LOOKUP_MISS = new Timer("lookup.miss"); // --lookup reading an item from the file
+    public static final Counter LEFT_ROTATIONS = new Counter("avl.rotations.left");
+    public static final Counter RIGHT_ROTATIONS = new Counter("avl.rotations.right");
+    public static final Counter LOOKUP_HITS = new Counter("lookup.hits");
+    public static final Counter LOOKUP_MISSES = new Counter("lookup.misses");
+
+    static {
+        if (ENABLED && DUMP_SECONDS > 0) {
+            ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "inventory-metrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+            dumper.scheduleAtFixedRate(() -> dump(System.err), DUMP_SECONDS, DUMP_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    // Start time for Timer.record, or 0 without reading the clock when metrics are off
+    public static long now() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    // Publish a value that is read when someone looks at it, like the tree height
+    public static void gauge(String name, LongSupplier value) {
+        if (ENABLED) {
+            Gauge gauge = new Gauge(name, value);
+            gauges.add(gauge);
+            register("Gauge", name, gauge);
+        }
+    }
+
+    // Print every metric, one per line
+    public static void dump(PrintStream out) {
+        StringBuilder text = new StringBuilder("Inventory metrics:\n");
+        for (Timer timer : timers) {
+            text.append(String.format("  %-22s count=%d mean=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus%n",
+                    timer.name, timer.getCount(), timer.getMeanMicros(), timer.getP50Micros(),
+                    timer.getP99Micros(), timer.getP999Micros(), timer.getMaxMicros()));
+        }
+        for (Counter counter : counters) {
+            text.append(String.format("  %-22s %d%n", counter.name, counter.getCount()));
+        }
+        for (Gauge gauge : gauges) {
+            text.append(String.format("  %-22s %d%n", gauge.name, gauge.getValue()));
+        }
+        out.print(text); // One print, so lines from other threads don't end up in the middle
+    }
+
+    private static void register(String type, String name, Object bean) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + name));
+        } catch (JMException e) {
+            System.err.println("Error registering metric " + name + ": " + e.getMessage());
+        }
+    }
+
+    // --------------------------------------------------------------
+    //  Metric types
+    // --------------------------------------------------------------
+
+    public interface TimerMXBean {
+        long getCount();
+        double getMeanMicros();
+        double getP50Micros();
+        double getP99Micros();
+        double getP999Micros();
+        double getMaxMicros();
+    }
+
+    public interface CounterMXBean {
+        long getCount();
+    }
+
+    public interface GaugeMXBean {
+        long getValue();
+    }
+
+    // Latency histogram in the style of HdrHistogram: each power of two is split into 16 buckets,
+    // so any latency is recorded within about 6%, from nanoseconds up to years, in under 1000 buckets.
+    // Every bucket is a LongAdder, so threads recording at the same time don't fight over one counter.
+    public static class Timer implements TimerMXBean {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        final String name;
+        private final LongAdder[] buckets;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+        Timer(String name) {
+            this.name = name;
+            this.buckets = ENABLED ? new LongAdder[BUCKETS] : null; // Nothing to allocate when off
+            if (ENABLED) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    buckets[i] = new LongAdder();
+                }
+                timers.add(this);
+                register("Timer", name, this);
+            }
+        }
+
+        // Record the time since start (from InventoryMetrics.now())
+        public void record(long start) {
+            if (ENABLED) {
+                recordNanos(System.nanoTime() - start);
+            }
+        }
+
+        public void recordNanos(long nanos) {
+            if (ENABLED) {
+                long value = Math.max(nanos, 0);
+                buckets[bucketOf(value)].increment();
+                count.increment();
+                totalNanos.add(value);
+                maxNanos.accumulate(value);
+            }
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value; // Small values get a bucket each
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value); // Position of the highest bit
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1); // The next 4 bits
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        // Smallest value that goes into a bucket
+        static long lowestValueIn(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long subBucket = bucket % SUB_BUCKETS;
+            return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        }
+
+        // The latency that this fraction of the recordings is at or below, in nanoseconds (middle of its bucket)
+        public long percentileNanos(double fraction) {
+            if (!ENABLED) {
+                return 0;
+            }
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            for (int i = 0; i < BUCKETS; i++) {
+                rank -= counts[i];
+                if (rank <= 0) {
+                    long low = lowestValueIn(i);
+                    long high = i + 1 < BUCKETS ? lowestValueIn(i + 1) - 1 : Long.MAX_VALUE;
+                    return Math.min(low + (high - low) / 2, maxNanos.get());
+                }
+            }
+            return maxNanos.get();
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public double getMeanMicros() {
+            long recorded = count.sum();
+            return recorded == 0 ? 0 : totalNanos.sum() / 1000.0 / recorded;
+        }
+
+        @Override
+        public double getP50Micros() {
+            return percentileNanos(0.50) / 1000.0;
+        }
+
+        @Override
+        public double getP99Micros() {
+            return percentileNanos(0.99) / 1000.0;
+        }
+
+        @Override
+        public double getP999Micros() {
+            return percentileNanos(0.999) / 1000.0;
+        }
+
+        @Override
+        public double getMaxMicros() {
+            return maxNanos.get() / 1000.0;
+        }
+    }
+
+    public static class Counter implements CounterMXBean {
+        final String name;
+        private final LongAdder count = new LongAdder();
+
+        Counter(String name) {
+            this.name = name;
+            if (ENABLED) {
+                counters.add(this);
+                register("Counter", name, this);
+            }
+        }
+
+        public void increment() {
+            if (ENABLED) {
+                count.increment();
+            }
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    private static class Gauge implements GaugeMXBean {
+        final String name;
+        private final LongSupplier value;
+
+        Gauge(String name, LongSupplier value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public long getValue() {
+            return value.getAsLong();
+        }
+    }
+}
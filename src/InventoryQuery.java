@@ -0,0 +1,54 @@
+// The criteria for an advanced search. Anything left out matches every item.
+// Brand, status and stock label ignore case; the date range is inclusive and uses MM/dd/yyyy like dateEntered.
+public class InventoryQuery {
+    String brand;
+    String status;
+    String stockLabel;
+    String enteredFrom;
+    String enteredTo;
+
+    public InventoryQuery brand(String brand) {
+        this.brand = brand;
+        return this;
+    }
+
+    public InventoryQuery status(String status) {
+        this.status = status;
+        return this;
+    }
+
+    public InventoryQuery stockLabel(String stockLabel) {
+        this.stockLabel = stockLabel;
+        return this;
+    }
+
+    // Either end can be null for an open range
+    public InventoryQuery enteredBetween(String enteredFrom, String enteredTo) {
+        this.enteredFrom = enteredFrom;
+        this.enteredTo = enteredTo;
+        return this;
+    }
+
+    boolean hasDateRange() {
+        return enteredFrom != null || enteredTo != null;
+    }
+
+    // Check one item against the criteria, for when there are no indexes to search (the disk inventory)
+    boolean matches(InventoryManagement.InventoryItem item) {
+        if ((brand != null && !brand.equalsIgnoreCase(item.brand))
+                || (status != null && !status.equalsIgnoreCase(item.status))
+                || (stockLabel != null && !stockLabel.equalsIgnoreCase(item.stockLabel))) {
+            return false;
+        }
+        if (!hasDateRange()) {
+            return true;
+        }
+        int from = enteredFrom == null ? Integer.MIN_VALUE : InventoryQueryIndex.packDate(enteredFrom);
+        int to = enteredTo == null ? Integer.MAX_VALUE : InventoryQueryIndex.packDate(enteredTo);
+        if (from == -1 || to == -1) {
+            throw new IllegalArgumentException("Dates must be in MM/dd/yyyy format");
+        }
+        int date = InventoryQueryIndex.packDate(item.dateEntered);
+        return date != -1 && date >= from && date <= to;
+    }
+}
@@ -0,0 +1,188 @@
+import java.util.*;
+
+// Per-field indexes for InventoryQuery: a bitmap of item slots for every brand, status and stock label,
+// and a sorted date index. A query intersects the smallest bitmaps first, so its cost follows the
+// size of the matching sets instead of the size of the inventory.
+public class InventoryQueryIndex {
+
+    // The items with one value of a field, plus how many there are so the planner doesn't have to count bits
+    private static class Posting {
+        final BitSet slots = new BitSet();
+        int count;
+
+        void add(int slot) {
+            slots.set(slot);
+            count++;
+        }
+
+        void remove(int slot) {
+            slots.clear(slot);
+            count--;
+        }
+    }
+
+    private final ArrayList<InventoryManagement.InventoryItem> itemsBySlot = new ArrayList<>(); // Each item gets a small integer slot
+    private final HashMap<String, Integer> slotsByEngineNumber = new HashMap<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>(); // Slots of deleted items, reused first
+    private final BitSet usedSlots = new BitSet();
+
+    private final HashMap<String, Posting> byBrand = new HashMap<>();
+    private final HashMap<String, Posting> byStatus = new HashMap<>();
+    private final HashMap<String, Posting> byStockLabel = new HashMap<>();
+    private final TreeMap<Integer, Posting> byDate = new TreeMap<>(); // Keyed by yyyyMMdd
+    private int[] datesBySlot = new int[16]; // Packed date of each slot, -1 if it couldn't be read
+
+    // Index an item. An item with the same engine number must be removed first.
+    public void add(InventoryManagement.InventoryItem item) {
+        int slot = freeSlots.isEmpty() ? itemsBySlot.size() : freeSlots.pop();
+        int date = packDate(item.dateEntered);
+        if (slot == itemsBySlot.size()) {
+            itemsBySlot.add(item);
+        } else {
+            itemsBySlot.set(slot, item);
+        }
+        if (slot == datesBySlot.length) {
+            datesBySlot = Arrays.copyOf(datesBySlot, slot * 2);
+        }
+        datesBySlot[slot] = date;
+        slotsByEngineNumber.put(item.engineNumber, slot);
+        usedSlots.set(slot);
+
+        byBrand.computeIfAbsent(BrandIndex.foldCase(item.brand), key -> new Posting()).add(slot);
+        byStatus.computeIfAbsent(BrandIndex.foldCase(item.status), key -> new Posting()).add(slot);
+        byStockLabel.computeIfAbsent(BrandIndex.foldCase(item.stockLabel), key -> new Posting()).add(slot);
+        if (date >= 0) {
+            byDate.computeIfAbsent(date, key -> new Posting()).add(slot);
+        }
+    }
+
+    // Take an item out of every index
+    public void remove(InventoryManagement.InventoryItem item) {
+        Integer slot = slotsByEngineNumber.remove(item.engineNumber);
+        if (slot == null) {
+            return;
+        }
+        removeFrom(byBrand, BrandIndex.foldCase(item.brand), slot);
+        removeFrom(byStatus, BrandIndex.foldCase(item.status), slot);
+        removeFrom(byStockLabel, BrandIndex.foldCase(item.stockLabel), slot);
+        int date = datesBySlot[slot];
+        if (date >= 0) {
+            removeFrom(byDate, date, slot);
+        }
+
+        itemsBySlot.set(slot, null);
+        usedSlots.clear(slot);
+        freeSlots.push(slot);
+    }
+
+    private static <K> void removeFrom(Map<K, Posting> index, K key, int slot) {
+        Posting posting = index.get(key);
+        if (posting != null) {
+            posting.remove(slot);
+            if (posting.count == 0) {
+                index.remove(key);
+            }
+        }
+    }
+
+    // Run a query and return the matching items sorted by engine number
+    public List<InventoryManagement.InventoryItem> search(InventoryQuery query) {
+        // Collect the bitmaps of the equality conditions. A value nobody has means no results at all.
+        List<Posting> postings = new ArrayList<>();
+        if (!addPosting(postings, byBrand, query.brand)
+                || !addPosting(postings, byStatus, query.status)
+                || !addPosting(postings, byStockLabel, query.stockLabel)) {
+            return new ArrayList<>();
+        }
+
+        int from = query.enteredFrom == null ? Integer.MIN_VALUE : packDate(query.enteredFrom);
+        int to = query.enteredTo == null ? Integer.MAX_VALUE : packDate(query.enteredTo);
+        if (from == -1 || to == -1) {
+            throw new IllegalArgumentException("Dates must be in MM/dd/yyyy format");
+        }
+        if (from > to) {
+            return new ArrayList<>(); // Empty range
+        }
+        NavigableMap<Integer, Posting> dates = query.hasDateRange() ? byDate.subMap(from, true, to, true) : null;
+        if (dates != null && dates.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // Most selective first: start from the smallest bitmap and intersect the others in size order
+        postings.sort(Comparator.comparingInt(posting -> posting.count));
+        BitSet result;
+        if (dates != null && (postings.isEmpty() || countOf(dates) <= postings.get(0).count)) {
+            result = new BitSet();
+            for (Posting posting : dates.values()) {
+                result.or(posting.slots);
+            }
+            dates = null; // Already applied
+        } else if (!postings.isEmpty()) {
+            result = (BitSet) postings.get(0).slots.clone();
+            postings.remove(0);
+        } else {
+            result = (BitSet) usedSlots.clone();
+        }
+        for (Posting posting : postings) {
+            if (result.isEmpty()) {
+                break;
+            }
+            result.and(posting.slots);
+        }
+
+        List<InventoryManagement.InventoryItem> items = new ArrayList<>(result.cardinality());
+        for (int slot = result.nextSetBit(0); slot >= 0; slot = result.nextSetBit(slot + 1)) {
+            // If the date range wasn't the most selective, check the few rows that are left instead of OR-ing its bitmaps.
+            // A date that couldn't be read never matches a range, like in InventoryQuery.matches.
+            int date = datesBySlot[slot];
+            if (dates == null || (date != -1 && date >= from && date <= to)) {
+                items.add(itemsBySlot.get(slot));
+            }
+        }
+        items.sort(Comparator.comparing(item -> item.engineNumber));
+        return items;
+    }
+
+    // Adds the bitmap for this value if there is a condition on the field; returns false if nothing has the value
+    private static boolean addPosting(List<Posting> postings, Map<String, Posting> index, String value) {
+        if (value == null) {
+            return true;
+        }
+        Posting posting = index.get(BrandIndex.foldCase(value));
+        if (posting == null) {
+            return false;
+        }
+        postings.add(posting);
+        return true;
+    }
+
+    private static long countOf(NavigableMap<Integer, Posting> dates) {
+        long count = 0;
+        for (Posting posting : dates.values()) {
+            count += posting.count;
+        }
+        return count;
+    }
+
+    // Turn "MM/dd/yyyy" into yyyyMMdd so dates sort as numbers. Returns -1 if the date can't be read.
+    static int packDate(String date) {
+        if (date == null) {
+            return -1;
+        }
+        String[] parts = date.trim().split("/");
+        if (parts.length != 3) {
+            return -1;
+        }
+        try {
+            int month = Integer.parseInt(parts[0]);
+            int day = Integer.parseInt(parts[1]);
+            int year = Integer.parseInt(parts[2]);
+            if (month < 1 || month > 12 || day < 1 || day > 31 || year < 0 || year > 9999) {
+                return -1;
+            }
+            return year * 10000 + month * 100 + day;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
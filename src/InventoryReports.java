@@ -0,0 +1,111 @@
+import java.util.*;
+import java.util.function.Function;
+
+// Running totals for the management reports: stock by brand and status, on-hand vs sold per month,
+// and New vs Old per brand. They are updated as items are added and removed, so a report only
+// costs O(groups) instead of a pass over the whole inventory.
+public class InventoryReports {
+
+    public static final String UNKNOWN_MONTH = "Unknown"; // Month for dates that aren't MM/dd/yyyy
+
+    private final CrossTab<String> byBrandAndStatus = new CrossTab<>();
+    private final CrossTab<String> byBrandAndStockLabel = new CrossTab<>();
+    private final CrossTab<Integer> byMonthAndStatus = new CrossTab<>(); // Months as yyyyMM, -1 for unknown
+    private int itemCount;
+
+    // Counts by a row key and a column key. Groups that drop to zero are removed, so there are never empty rows.
+    private static class CrossTab<R extends Comparable<R>> {
+        final TreeMap<R, TreeMap<String, Integer>> counts = new TreeMap<>();
+
+        void add(R row, String column, int delta) {
+            TreeMap<String, Integer> columns = counts.computeIfAbsent(row, key -> new TreeMap<>());
+            columns.merge(column, delta, (count, change) -> count + change == 0 ? null : count + change);
+            if (columns.isEmpty()) {
+                counts.remove(row);
+            }
+        }
+
+        void addAll(CrossTab<R> other) {
+            for (Map.Entry<R, TreeMap<String, Integer>> row : other.counts.entrySet()) {
+                for (Map.Entry<String, Integer> column : row.getValue().entrySet()) {
+                    add(row.getKey(), column.getKey(), column.getValue());
+                }
+            }
+        }
+    }
+
+    // Count an item that was added to the inventory
+    public void add(InventoryManagement.InventoryItem item) {
+        count(item, 1);
+    }
+
+    // Stop counting an item that was removed. It must be the same item that was added.
+    public void remove(InventoryManagement.InventoryItem item) {
+        count(item, -1);
+    }
+
+    private void count(InventoryManagement.InventoryItem item, int delta) {
+        byBrandAndStatus.add(item.brand, item.status, delta);
+        byBrandAndStockLabel.add(item.brand, item.stockLabel, delta);
+        int date = InventoryQueryIndex.packDate(item.dateEntered);
+        byMonthAndStatus.add(date < 0 ? -1 : date / 100, item.status, delta);
+        itemCount += delta;
+    }
+
+    // Add another set of totals to this one. Lets a parallel stream count each part on its own and combine them.
+    public void addAll(InventoryReports other) {
+        byBrandAndStatus.addAll(other.byBrandAndStatus);
+        byBrandAndStockLabel.addAll(other.byBrandAndStockLabel);
+        byMonthAndStatus.addAll(other.byMonthAndStatus);
+        itemCount += other.itemCount;
+    }
+
+    // Count everything from scratch on all cores. Slow (O(n)), but handy for checking the running totals.
+    public static InventoryReports recompute(Collection<InventoryManagement.InventoryItem> items) {
+        return items.parallelStream().collect(InventoryReports::new, InventoryReports::add, InventoryReports::addAll);
+    }
+
+    // True if both have exactly the same totals
+    public boolean matches(InventoryReports other) {
+        return itemCount == other.itemCount
+                && byBrandAndStatus.counts.equals(other.byBrandAndStatus.counts)
+                && byBrandAndStockLabel.counts.equals(other.byBrandAndStockLabel.counts)
+                && byMonthAndStatus.counts.equals(other.byMonthAndStatus.counts);
+    }
+
+    public int itemCount() {
+        return itemCount;
+    }
+
+    // Brand -> status -> number of items, sorted by brand and status
+    public Map<String, Map<String, Integer>> countsByBrandAndStatus() {
+        return copyOf(byBrandAndStatus, brand -> brand);
+    }
+
+    // Brand -> stock label (New, Old...) -> number of items
+    public Map<String, Map<String, Integer>> countsByBrandAndStockLabel() {
+        return copyOf(byBrandAndStockLabel, brand -> brand);
+    }
+
+    // Month entered ("yyyy-MM", or UNKNOWN_MONTH first) -> status -> number of items, oldest month first
+    public Map<String, Map<String, Integer>> countsByMonthAndStatus() {
+        return copyOf(byMonthAndStatus, month -> month < 0 ? UNKNOWN_MONTH : String.format("%04d-%02d", month / 100, month % 100));
+    }
+
+    // Stock label -> number of items, over the whole inventory
+    public Map<String, Integer> countsByStockLabel() {
+        TreeMap<String, Integer> totals = new TreeMap<>();
+        for (TreeMap<String, Integer> columns : byBrandAndStockLabel.counts.values()) {
+            columns.forEach((stockLabel, count) -> totals.merge(stockLabel, count, Integer::sum));
+        }
+        return totals;
+    }
+
+    private static <R extends Comparable<R>> Map<String, Map<String, Integer>> copyOf(CrossTab<R> table, Function<R, String> rowName) {
+        Map<String, Map<String, Integer>> copy = new LinkedHashMap<>();
+        for (Map.Entry<R, TreeMap<String, Integer>> row : table.counts.entrySet()) {
+            copy.put(rowName.apply(row.getKey()), Collections.unmodifiableMap(new TreeMap<>(row.getValue())));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+}
@@ -1,35 +1,54 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.text.SimpleDateFormat;
 
 public class InventoryRepository {
 
     private static final String CSV_FILE_PATH = "C:\\Users\\Jomax\\OneDrive\\Documents\\NetBeansProjects\\InventoryManagement2\\src\\MotorPH Inventory Data2.csv";
 
+    private final String csvFilePath; // The CSV file this repository reads and appends to
+
+    // Use the default inventory CSV file
+    public InventoryRepository() {
+        this(CSV_FILE_PATH);
+    }
+
+    // Use another CSV file, e.g. a branch export or generated benchmark data
+    public InventoryRepository(String csvFilePath) {
+        this.csvFilePath = csvFilePath;
+    }
+
     // Load inventory from CSV file
     public List<InventoryManagement.InventoryItem> loadInventoryFromCSV() {
+        long start = InventoryMetrics.now();
         List<InventoryManagement.InventoryItem> inventoryList = new ArrayList<>(); // Create a new list to store inventory items
-        File csvFile = new File(CSV_FILE_PATH); // Create a file object for the CSV file
+        forEachItemInCSV(inventoryList::add); // Add each item to the list
+        InventoryMetrics.CSV_LOAD.record(start);
+        return inventoryList; // Return the list of inventory items
+    }
+
+    // Read the CSV file one row at a time and hand each item over without keeping a list,
+    // for callers that keep the rows somewhere else
+    public void forEachItemInCSV(Consumer<InventoryManagement.InventoryItem> consumer) {
+        File csvFile = new File(csvFilePath); // Create a file object for the CSV file
 
         // Check if the CSV file exists
-        if (!csvFile.exists()) {
-            try {
-                csvFile.createNewFile(); // Create the file if it doesn't exist
-                // Write header row
-                try (BufferedWriter bw = new BufferedWriter(new FileWriter(CSV_FILE_PATH))) {
-                    bw.write("Date Entered,Stock Label,Brand,Engine Number,Status"); // Write the header
-                    bw.newLine(); // Add a new line after the header
-                }
-                System.out.println("CSV file created with header row.");
-            } catch (IOException e) {
-                System.err.println("Error creating CSV file: " + e.getMessage()); // Print error message if file creation fails
-                e.printStackTrace(); // Print the stack trace for debugging
-                return inventoryList; // Stop loading if we can't create the file
-            }
+        if (!ensureCsvFileExists(csvFile)) {
+            return; // Stop loading if we can't create the file
         }
 
         // Try to read the CSV file
-        try (BufferedReader br = new BufferedReader(new FileReader(CSV_FILE_PATH))) {
+        try (BufferedReader br = new BufferedReader(new FileReader(csvFilePath))) {
              if(csvFile.length() > 0) {
                 br.readLine();
             }
@@ -41,20 +60,58 @@ public class InventoryRepository {
                 if (data.length == 5) {
                     // Create a new inventory item with the data from the CSV
                     InventoryManagement.InventoryItem item = new InventoryManagement.InventoryItem(data[0], data[1], data[2], data[3], data[4]);
-                    inventoryList.add(item); // Add the item to the list
+                    consumer.accept(item); // Hand the item over
                 }
             }
         } catch (IOException e) {
             System.err.println("Error loading inventory from CSV: " + e.getMessage()); // Print error message if file reading fails
             e.printStackTrace(); // Print the stack trace for debugging
         }
-        return inventoryList; // Return the list of inventory items
+    }
+
+    // Load inventory from CSV file using a memory-mapped, parallel parser.
+    // Returns exactly the same items, in the same order, as loadInventoryFromCSV.
+    public List<InventoryManagement.InventoryItem> loadInventoryFromCSVParallel() {
+        File csvFile = new File(csvFilePath); // Create a file object for the CSV file
+
+        // Check if the CSV file exists
+        if (!ensureCsvFileExists(csvFile)) {
+            return new ArrayList<>(); // Stop loading if we can't create the file
+        }
+
+        long start = InventoryMetrics.now();
+        try (FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ)) {
+            long[] chunkBounds = splitIntoChunks(channel); // Newline-aligned chunk boundaries, header already skipped
+            if (chunkBounds.length < 2) {
+                return new ArrayList<>(); // Nothing after the header
+            }
+            return ForkJoinPool.commonPool().invoke(new ParseChunksTask(channel, chunkBounds, 0, chunkBounds.length - 1));
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error loading inventory from CSV: " + e.getMessage()); // Print error message if file reading fails
+            e.printStackTrace(); // Print the stack trace for debugging
+            return new ArrayList<>();
+        } finally {
+            InventoryMetrics.CSV_LOAD.record(start);
+        }
     }
 
     // Save inventory to CSV file
-    public void saveInventoryToCSV(String newFilePath, List<InventoryManagement.InventoryItem> inventoryList) {
+    public void saveInventoryToCSV(String newFilePath, Iterable<InventoryManagement.InventoryItem> inventoryList) {
         // Try to write to the CSV file
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(newFilePath))) {
+        long start = InventoryMetrics.now();
+        try {
+            writeCSV(newFilePath, inventoryList);
+        } catch (IOException e) {
+            System.err.println("Error saving inventory to CSV: " + e.getMessage()); // Print error message if file writing fails
+            e.printStackTrace(); // Report any errors.
+        } finally {
+            InventoryMetrics.CSV_SAVE.record(start);
+        }
+    }
+
+    // Write the header row and every item to a CSV file
+    private static void writeCSV(String filePath, Iterable<InventoryManagement.InventoryItem> inventoryList) throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filePath))) {
             bw.write("Date Entered,Stock Label,Brand,Engine Number,Status"); // Write the header row
             bw.newLine(); // Start a new line
 
@@ -63,29 +120,428 @@ public class InventoryRepository {
                 bw.write(item.toString()); // Write the item to the file
                 bw.newLine(); // Start a new line
             }
-        } catch (IOException e) {
-            System.err.println("Error saving inventory to CSV: " + e.getMessage()); // Print error message if file writing fails
-            e.printStackTrace(); // Report any errors.
         }
     }
 
     // Add new Item to CSV File
     public void addItemToCSV(InventoryManagement.InventoryItem newItem) {
+        addItemsToCSV(List.of(newItem));
+    }
+
+    // Add several new items to the CSV file, opening it once
+    public void addItemsToCSV(Iterable<InventoryManagement.InventoryItem> newItems) {
         // Try to write to the CSV file in append mode
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(CSV_FILE_PATH, true))) {
-            writer.newLine(); // Add a new line
-            writer.write(newItem.toString()); // Write the item to the file
+        long start = InventoryMetrics.now();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(csvFilePath, true))) {
+            for (InventoryManagement.InventoryItem newItem : newItems) {
+                writer.newLine(); // Add a new line
+                writer.write(newItem.toString()); // Write the item to the file
+            }
         } catch (IOException e) {
             System.err.println("Error adding item to CSV: " + e.getMessage()); // Print error message if file writing fails
             e.printStackTrace(); // Print the stack trace for debugging
+        } finally {
+            InventoryMetrics.CSV_APPEND.record(start);
+        }
+    }
+
+    // --------------------------------------------------------------
+    //  Journaled persistence
+    // --------------------------------------------------------------
+
+    // Once the log grows past this size, a background compaction writes a new snapshot
+    private static final long JOURNAL_COMPACTION_THRESHOLD = 8L << 20; // 8 MB
+
+    private InventoryJournal journal; // Only set when journaled persistence is on
+    private Supplier<List<InventoryManagement.InventoryItem>> snapshotSource; // The current inventory, sorted
+
+    // Load the last snapshot and replay the journal over it
+    public List<InventoryManagement.InventoryItem> loadInventoryWithJournal() {
+        Map<String, InventoryManagement.InventoryItem> inventory = new LinkedHashMap<>();
+        for (InventoryManagement.InventoryItem item : loadLatestSnapshot()) {
+            inventory.putIfAbsent(item.engineNumber, item); // First one wins, like insertIntoAVL
+        }
+
+        Path logPath = journalPath();
+        try {
+            InventoryJournal.replay(InventoryJournal.oldLogPathFor(logPath), inventory); // Left behind by an unfinished compaction
+            InventoryJournal.replay(logPath, inventory);
+        } catch (IOException e) {
+            System.err.println("Error replaying inventory journal: " + e.getMessage()); // Print error message if the log can't be read
+            e.printStackTrace(); // Print the stack trace for debugging
+        }
+        return new ArrayList<>(inventory.values());
+    }
+
+    // Switch to journaled persistence. snapshotSource must return the current inventory sorted by engine number.
+    public void openJournal(Supplier<List<InventoryManagement.InventoryItem>> snapshotSource) {
+        this.snapshotSource = snapshotSource;
+        Path logPath = journalPath();
+        Path oldLogPath = InventoryJournal.oldLogPathFor(logPath);
+        try {
+            if (Files.exists(oldLogPath)) {
+                // A compaction didn't finish. Both logs were replayed on load, so fold them into a snapshot now.
+                writeSnapshot(snapshotSource.get());
+                Files.deleteIfExists(logPath);
+                Files.delete(oldLogPath);
+            }
+            if (!isBinarySnapshotFresh()) {
+                // First start in this mode, or the CSV was edited by hand: give the next start the fast path
+                InventorySnapshot.write(binarySnapshotPath(), snapshotSource.get(), Paths.get(csvFilePath));
+            }
+            journal = new InventoryJournal(logPath, this::writeSnapshotInBackground);
+        } catch (IOException e) {
+            System.err.println("Error opening inventory journal: " + e.getMessage()); // Print error message if the log can't be opened
+            e.printStackTrace(); // Print the stack trace for debugging
+        }
+    }
+
+    public boolean isJournaled() {
+        return journal != null;
+    }
+
+    // Whether a journal was left next to the CSV file, with changes the CSV file may not have
+    public boolean hasJournal() {
+        Path logPath = journalPath();
+        return Files.exists(logPath) || Files.exists(InventoryJournal.oldLogPathFor(logPath));
+    }
+
+    // Queue an added item without waiting, so many records can share one sync
+    public CompletableFuture<Void> logAddAsync(InventoryManagement.InventoryItem item) {
+        compactJournalIfNeeded();
+        return timed(journal.appendAdd(item));
+    }
+
+    // Queue a deleted engine number without waiting, so many records can share one sync
+    public CompletableFuture<Void> logDeleteAsync(String engineNumber) {
+        compactJournalIfNeeded();
+        return timed(journal.appendDelete(engineNumber));
+    }
+
+    // Queue a changed item without waiting, so many records can share one sync
+    public CompletableFuture<Void> logUpdateAsync(InventoryManagement.InventoryItem item) {
+        compactJournalIfNeeded();
+        return timed(journal.appendUpdate(item));
+    }
+
+    // Time a journal record from now until it is synced
+    private static CompletableFuture<Void> timed(CompletableFuture<Void> written) {
+        if (InventoryMetrics.ENABLED) {
+            long start = InventoryMetrics.now();
+            written.whenComplete((ignored, error) -> InventoryMetrics.JOURNAL_WRITE.record(start));
+        }
+        return written;
+    }
+
+    // Wait for queued journal records to reach the disk. Returns false if they couldn't be written.
+    public boolean awaitJournal(CompletableFuture<?> written) {
+        try {
+            written.join();
+            return true;
+        } catch (CompletionException e) {
+            System.err.println("Error saving inventory changes: " + e.getCause().getMessage()); // Print error message if the log can't be written
+            e.printStackTrace(); // Print the stack trace for debugging
+            return false;
+        }
+    }
+
+    // Flush the journal and wait for a running compaction before exiting
+    public void closeJournal() {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    // Make sortedItems the whole saved inventory: a new snapshot and an empty journal, for changes too big
+    // to log one by one, like merging other inventory files in. Returns false if it couldn't be saved.
+    public boolean replaceSnapshot(List<InventoryManagement.InventoryItem> sortedItems) {
+        boolean journaled = journal != null;
+        closeJournal(); // Waits for queued records and a running compaction
+        try {
+            writeSnapshot(sortedItems);
+            // The logs are in the new snapshot already. Replaying them over it after a crash right here
+            // would be mostly harmless, but a logged delete could remove an item that was merged back in.
+            Files.deleteIfExists(InventoryJournal.oldLogPathFor(journalPath()));
+            Files.deleteIfExists(journalPath());
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error saving inventory snapshot: " + e.getMessage()); // Print error message if file writing fails
+            e.printStackTrace(); // Print the stack trace for debugging
+            return false;
+        } finally {
+            if (journaled) {
+                openJournal(snapshotSource);
+            }
+        }
+    }
+
+    // Runs before a record is queued, so the snapshot holds every logged change. Whether or not it already
+    // holds the change about to be logged doesn't matter, replaying an add or delete twice changes nothing.
+    private void compactJournalIfNeeded() {
+        if (journal.size() > JOURNAL_COMPACTION_THRESHOLD) {
+            journal.compact(snapshotSource.get());
+        }
+    }
+
+    private void writeSnapshotInBackground(List<InventoryManagement.InventoryItem> snapshot) {
+        try {
+            writeSnapshot(snapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Write a new snapshot next to the CSV file, then swap it in so a crash never leaves a half-written CSV.
+    // The binary snapshot is written after the CSV and records its size and checksum, so it is only used
+    // while the CSV file is exactly as it was written.
+    private void writeSnapshot(List<InventoryManagement.InventoryItem> snapshot) throws IOException {
+        Path csvPath = Paths.get(csvFilePath);
+        Path tempPath = csvPath.resolveSibling(csvPath.getFileName() + ".tmp");
+        writeCSV(tempPath.toString(), snapshot);
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tempPath, csvPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        InventorySnapshot.write(binarySnapshotPath(), snapshot, csvPath);
+    }
+
+    // --------------------------------------------------------------
+    //  Binary snapshots
+    // --------------------------------------------------------------
+
+    // Memory-map the binary snapshot that goes with the CSV file.
+    // Returns null if there is no up-to-date snapshot.
+    private InventorySnapshot openBinarySnapshot() {
+        if (!isBinarySnapshotFresh()) {
+            return null;
+        }
+        try {
+            return InventorySnapshot.open(binarySnapshotPath());
+        } catch (IOException e) {
+            System.err.println("Error opening inventory snapshot: " + e.getMessage()); // Damaged or old format
+            return null;
+        }
+    }
+
+    // Items from the binary snapshot when it is up to date (already sorted, nothing to parse), else from the CSV file
+    private List<InventoryManagement.InventoryItem> loadLatestSnapshot() {
+        InventorySnapshot snapshot = openBinarySnapshot();
+        return snapshot != null ? snapshot.toList() : loadInventoryFromCSVParallel();
+    }
+
+    // The binary snapshot only counts if it was written from the CSV file as it is now (same size and checksum).
+    // Modification times aren't enough: a hand edit in the same second, or a copy that keeps them, would get through.
+    private boolean isBinarySnapshotFresh() {
+        Path binaryPath = binarySnapshotPath();
+        try {
+            return Files.exists(binaryPath) && InventorySnapshot.isSnapshotOf(binaryPath, Paths.get(csvFilePath));
+        } catch (IOException e) {
+            return false; // No CSV file, or the snapshot can't be read: load the CSV as before
+        }
+    }
+
+    // The binary snapshot lives next to the CSV file, e.g. "MotorPH Inventory Data2.snapshot"
+    private Path binarySnapshotPath() {
+        String baseName = csvFilePath.substring(0, csvFilePath.lastIndexOf(".")); // Get the base name of the file
+        return Paths.get(baseName + ".snapshot");
+    }
+
+    // The journal lives next to the CSV file, e.g. "MotorPH Inventory Data2.log"
+    private Path journalPath() {
+        String baseName = csvFilePath.substring(0, csvFilePath.lastIndexOf(".")); // Get the base name of the file
+        return Paths.get(baseName + ".log");
+    }
+
+    // Helper method to create the CSV file with a header row if it doesn't exist yet
+    private boolean ensureCsvFileExists(File csvFile) {
+        if (csvFile.exists()) {
+            return true;
+        }
+        try {
+            csvFile.createNewFile(); // Create the file if it doesn't exist
+            // Write header row
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(csvFile))) {
+                bw.write("Date Entered,Stock Label,Brand,Engine Number,Status"); // Write the header
+                bw.newLine(); // Add a new line after the header
+            }
+            System.out.println("CSV file created with header row.");
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error creating CSV file: " + e.getMessage()); // Print error message if file creation fails
+            e.printStackTrace(); // Print the stack trace for debugging
+            return false;
+        }
+    }
+
+    // --------------------------------------------------------------
+    //  Helpers for the memory-mapped, parallel CSV loader
+    // --------------------------------------------------------------
+
+    // Chunks smaller than this aren't worth handing to another thread
+    private static final long MIN_CHUNK_SIZE = 1L << 20; // 1 MB
+    // Keep each mapping well below the 2 GB limit of a MappedByteBuffer
+    private static final long MAX_CHUNK_SIZE = 1L << 28; // 256 MB
+
+    // Split the file (minus the header line) into chunks that each start at the beginning of a line.
+    // Returns the boundaries, so chunk i is [bounds[i], bounds[i + 1]).
+    private static long[] splitIntoChunks(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long dataStart = size > 0 ? nextLineStart(channel, 0, size) : 0; // Skip the header row like readLine() does
+        long dataLength = size - dataStart;
+        if (dataLength <= 0) {
+            return new long[0];
+        }
+
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, dataLength / (parallelism * 4L)));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(dataStart);
+        long position = dataStart;
+        while (position < size) {
+            long next = position + chunkSize >= size ? size : nextLineStart(channel, position + chunkSize, size);
+            bounds.add(next);
+            position = next;
+        }
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    // Find the first position after the line terminator (\n, \r or \r\n) at or after 'from'.
+    // Returns 'size' if the last line has no terminator.
+    private static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    return position + i + 1;
+                }
+                if (b == '\r') {
+                    long afterCr = position + i + 1;
+                    // A \r\n pair is one terminator, so don't split between the two bytes
+                    if (afterCr < size) {
+                        ByteBuffer one = ByteBuffer.allocate(1);
+                        if (channel.read(one, afterCr) == 1 && one.get(0) == '\n') {
+                            return afterCr + 1;
+                        }
+                    }
+                    return afterCr;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // Parses a range of chunks, splitting the range in half until only one chunk is left
+    @SuppressWarnings("serial") // Never serialized, ForkJoinTask is just Serializable
+    private static class ParseChunksTask extends RecursiveTask<List<InventoryManagement.InventoryItem>> {
+        private final FileChannel channel;
+        private final long[] chunkBounds;
+        private final int fromChunk, toChunk; // Chunks [fromChunk, toChunk)
+
+        ParseChunksTask(FileChannel channel, long[] chunkBounds, int fromChunk, int toChunk) {
+            this.channel = channel;
+            this.chunkBounds = chunkBounds;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected List<InventoryManagement.InventoryItem> compute() {
+            if (toChunk - fromChunk == 1) {
+                long start = chunkBounds[fromChunk];
+                long length = chunkBounds[toChunk] - start;
+                try {
+                    return parseChunk(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            int middle = (fromChunk + toChunk) >>> 1;
+            ParseChunksTask left = new ParseChunksTask(channel, chunkBounds, fromChunk, middle);
+            ParseChunksTask right = new ParseChunksTask(channel, chunkBounds, middle, toChunk);
+            left.fork();
+            List<InventoryManagement.InventoryItem> rightItems = right.compute();
+            List<InventoryManagement.InventoryItem> leftItems = left.join();
+            leftItems.addAll(rightItems); // Keep file order: left chunk first
+            return leftItems;
+        }
+    }
+
+    // Hand-written field scanner for one chunk. Mirrors readLine() + split(","):
+    // lines end at \n, \r or \r\n, trailing empty fields are dropped, and only rows with exactly 5 fields are kept.
+    private static List<InventoryManagement.InventoryItem> parseChunk(ByteBuffer buffer) {
+        List<InventoryManagement.InventoryItem> items = new ArrayList<>((int) Math.min(Integer.MAX_VALUE, buffer.limit() / 40L));
+        int[] fieldStart = new int[5];
+        int[] fieldEnd = new int[5];
+        byte[] scratch = new byte[64];
+        int limit = buffer.limit();
+        int position = 0;
+
+        while (position < limit) {
+            int fieldIndex = 0; // Index of the field being scanned
+            int lastNonEmpty = -1; // Index of the last non-empty field, so trailing empty fields can be ignored
+            int start = position;
+            boolean endOfLine = false;
+
+            while (!endOfLine) {
+                byte b = position < limit ? buffer.get(position) : (byte) '\n';
+                if (b == ',' || b == '\n' || b == '\r') {
+                    if (position > start) {
+                        lastNonEmpty = fieldIndex;
+                    }
+                    if (fieldIndex < 5) {
+                        fieldStart[fieldIndex] = start;
+                        fieldEnd[fieldIndex] = position;
+                    }
+                    fieldIndex++;
+                    start = position + 1;
+                    if (b != ',') {
+                        endOfLine = true;
+                        if (b == '\r' && position + 1 < limit && buffer.get(position + 1) == '\n') {
+                            position++; // Treat \r\n as a single terminator
+                        }
+                    }
+                }
+                position++;
+            }
+
+            // Same rule as "data.length == 5" after split(",")
+            if (lastNonEmpty == 4) {
+                String[] data = new String[5];
+                for (int i = 0; i < 5; i++) {
+                    int length = fieldEnd[i] - fieldStart[i];
+                    if (scratch.length < length) {
+                        scratch = new byte[length];
+                    }
+                    buffer.get(fieldStart[i], scratch, 0, length);
+                    data[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+                }
+                items.add(new InventoryManagement.InventoryItem(data[0], data[1], data[2], data[3], data[4]));
+            }
         }
+        return items;
     }
 
     // Helper method to generate a new file path with timestamp
     public String generateNewFilePath() {
         String timeStamp = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date()); // Get the current timestamp
-        String baseName = CSV_FILE_PATH.substring(0, CSV_FILE_PATH.lastIndexOf(".")); // Get the base name of the file
-        String extension = CSV_FILE_PATH.substring(CSV_FILE_PATH.lastIndexOf(".")); // Get the file extension
+        String baseName = csvFilePath.substring(0, csvFilePath.lastIndexOf(".")); // Get the base name of the file
+        String extension = csvFilePath.substring(csvFilePath.lastIndexOf(".")); // Get the file extension
         return baseName + "_" + timeStamp + extension; // Return the new file path
     }
 }
@@ -0,0 +1,431 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Small HTTP/JSON front end for the inventory, so several terminals can use it at the same time.
+//   GET    /items/{engine number}       one item, or 404
+//   GET    /items?brand=Honda           every item of a brand (ignoring case), sorted by engine number
+//   GET    /items?after=X&limit=50      a page of the sorted inventory; "next" is the after= of the next page
+//   POST   /items                       add an item, the body is a JSON object with the five item fields
+//   PATCH  /items/{engine number}       change an item, the body has just the fields to change (not the engine number)
+//   DELETE /items/{engine number}       delete an item
+// Every request runs on its own virtual thread. Reads share a read lock and writes take the write lock
+// one at a time. Writers wait for the journal after letting go of the lock, so they can share a sync.
+public class InventoryServer {
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int BACKLOG = 4096; // Connections the OS may queue before we accept them
+    private static final int STOP_TIMEOUT_SECONDS = 10; // How long stop() waits for requests still writing
+    private static final String[] ITEM_FIELDS = {"dateEntered", "stockLabel", "brand", "engineNumber", "status"};
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // Guards the tree, the map and the indexes
+
+    // Listen on host:port. Use port 0 for any free port.
+    public InventoryServer(InetAddress host, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), BACKLOG);
+        server.createContext("/items", this::handle);
+        server.setExecutor(executor);
+    }
+
+    // Listen on localhost only
+    public InventoryServer(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    // Stop taking requests and wait for the running ones, so the journal can be closed safely afterwards
+    public void stop() {
+        server.stop(1); // Give running requests a second to finish
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Requests still running after " + STOP_TIMEOUT_SECONDS + " seconds, interrupting them");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --------------------------------------------------------------
+    //  Requests
+    // --------------------------------------------------------------
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            String engineNumber = null;
+            if (path.startsWith("/items/") && path.length() > "/items/".length()) {
+                engineNumber = URLDecoder.decode(path.substring("/items/".length()), StandardCharsets.UTF_8);
+            } else if (!path.equals("/items") && !path.equals("/items/")) {
+                sendError(exchange, 404, "Not found");
+                return;
+            }
+
+            switch (exchange.getRequestMethod()) {
+                case "GET":
+                    if (engineNumber != null) {
+                        getItem(exchange, engineNumber);
+                    } else {
+                        listItems(exchange, queryParameters(exchange));
+                    }
+                    break;
+                case "POST":
+                    if (engineNumber != null) {
+                        sendError(exchange, 405, "POST to /items to add an item");
+                    } else {
+                        addItem(exchange);
+                    }
+                    break;
+                case "PATCH":
+                    if (engineNumber == null) {
+                        sendError(exchange, 405, "PATCH /items/{engine number} to change an item");
+                    } else {
+                        updateItem(exchange, engineNumber);
+                    }
+                    break;
+                case "DELETE":
+                    if (engineNumber == null) {
+                        sendError(exchange, 405, "DELETE /items/{engine number} to delete an item");
+                    } else {
+                        deleteItem(exchange, engineNumber);
+                    }
+                    break;
+                default:
+                    sendError(exchange, 405, "Method not allowed");
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage()); // Bad parameters or body
+        } catch (RuntimeException e) {
+            System.err.println("Error handling " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + ": " + e.getMessage());
+            e.printStackTrace(); // Print the stack trace for debugging
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void getItem(HttpExchange exchange, String engineNumber) throws IOException {
+        String json;
+        lock.readLock().lock();
+        try {
+            InventoryManagement.InventoryItem item = InventoryManagement.findItemByEngineNumber(engineNumber);
+            json = item == null ? null : toJson(item);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (json == null) {
+            sendError(exchange, 404, "Item not found");
+        } else {
+            send(exchange, 200, json);
+        }
+    }
+
+    private void listItems(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+        String brand = parameters.get("brand");
+        String after = parameters.get("after");
+        int limit = DEFAULT_PAGE_SIZE;
+        if (parameters.containsKey("limit")) {
+            try {
+                limit = Integer.parseInt(parameters.get("limit"));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("limit must be a number");
+            }
+            if (limit < 1 || limit > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+        }
+
+        StringBuilder json = new StringBuilder("{\"items\":[");
+        lock.readLock().lock();
+        try {
+            if (brand != null) {
+                appendItems(json, InventoryManagement.findItemsByBrand(brand).iterator(), Integer.MAX_VALUE);
+                json.append("]}");
+            } else {
+                Iterator<InventoryManagement.InventoryItem> items = InventoryManagement.sortedInventoryAfter(after).iterator();
+                String last = appendItems(json, items, limit);
+                json.append("],\"next\":").append(items.hasNext() ? quote(last) : "null").append('}');
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        send(exchange, 200, json.toString());
+    }
+
+    // Append up to limit items as JSON objects and return the last engine number
+    private static String appendItems(StringBuilder json, Iterator<InventoryManagement.InventoryItem> items, int limit) {
+        String last = null;
+        for (int count = 0; count < limit && items.hasNext(); count++) {
+            InventoryManagement.InventoryItem item = items.next();
+            if (count > 0) {
+                json.append(',');
+            }
+            json.append(toJson(item));
+            last = item.engineNumber;
+        }
+        return last;
+    }
+
+    private void addItem(HttpExchange exchange) throws IOException {
+        Map<String, String> fields = parseJsonObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        for (String field : ITEM_FIELDS) {
+            checkFieldValue(field, fields.get(field));
+        }
+        InventoryManagement.InventoryItem item = new InventoryManagement.InventoryItem(
+                fields.get("dateEntered"), fields.get("stockLabel"), fields.get("brand"), fields.get("engineNumber"), fields.get("status"));
+
+        CompletableFuture<Boolean> added;
+        lock.writeLock().lock();
+        try {
+            added = InventoryManagement.addInventoryItem(item);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Boolean saved = awaitSaved(exchange, added);
+        if (saved == null) {
+            return; // Error already sent
+        }
+        if (saved) {
+            send(exchange, 201, toJson(item));
+        } else {
+            sendError(exchange, 409, "An item with that engine number already exists");
+        }
+    }
+
+    private void updateItem(HttpExchange exchange, String engineNumber) throws IOException {
+        Map<String, String> fields = parseJsonObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            if (!Arrays.asList(ITEM_FIELDS).contains(field.getKey())) {
+                throw new IllegalArgumentException("Unknown field " + field.getKey());
+            }
+            checkFieldValue(field.getKey(), field.getValue());
+        }
+        if (fields.containsKey("engineNumber") && !fields.get("engineNumber").equals(engineNumber)) {
+            throw new IllegalArgumentException("The engine number can't be changed");
+        }
+
+        InventoryManagement.InventoryItem item = null;
+        CompletableFuture<InventoryManagement.InventoryItem> updated = null;
+        lock.writeLock().lock();
+        try {
+            InventoryManagement.InventoryItem existing = InventoryManagement.findItemByEngineNumber(engineNumber);
+            if (existing != null) {
+                item = new InventoryManagement.InventoryItem(fields.getOrDefault("dateEntered", existing.dateEntered),
+                        fields.getOrDefault("stockLabel", existing.stockLabel), fields.getOrDefault("brand", existing.brand),
+                        engineNumber, fields.getOrDefault("status", existing.status));
+                updated = InventoryManagement.updateInventoryItem(item);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (updated == null) {
+            sendError(exchange, 404, "Item not found");
+            return;
+        }
+        if (awaitSaved(exchange, updated) != null) {
+            send(exchange, 200, toJson(item));
+        }
+    }
+
+    private void deleteItem(HttpExchange exchange, String engineNumber) throws IOException {
+        CompletableFuture<InventoryManagement.InventoryItem> deleted = null;
+        lock.writeLock().lock();
+        try {
+            if (InventoryManagement.findItemByEngineNumber(engineNumber) != null) {
+                deleted = InventoryManagement.deleteInventoryItem(engineNumber);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (deleted == null) {
+            sendError(exchange, 404, "Item not found");
+            return;
+        }
+        InventoryManagement.InventoryItem item = awaitSaved(exchange, deleted);
+        if (item != null) {
+            send(exchange, 200, toJson(item)); // Nobody else can see it any more, so no lock needed
+        }
+    }
+
+    private static void checkFieldValue(String field, String value) {
+        if (value == null || value.isEmpty() || value.contains(",") || value.contains("\n") || value.contains("\r")) {
+            throw new IllegalArgumentException(field + " is required and can't contain commas or line breaks");
+        }
+    }
+
+    // Wait until a change is saved. Returns null after sending a 500 if it couldn't be.
+    private static <T> T awaitSaved(HttpExchange exchange, CompletableFuture<T> saved) throws IOException {
+        try {
+            return saved.join();
+        } catch (CompletionException e) {
+            System.err.println("Error saving inventory change: " + e.getCause().getMessage());
+            sendError(exchange, 500, "The change was applied but couldn't be saved");
+            return null;
+        }
+    }
+
+    // --------------------------------------------------------------
+    //  HTTP and JSON helpers
+    // --------------------------------------------------------------
+
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, "{\"error\":" + quote(message) + "}");
+    }
+
+    static String toJson(InventoryManagement.InventoryItem item) {
+        return "{\"dateEntered\":" + quote(item.dateEntered)
+                + ",\"stockLabel\":" + quote(item.stockLabel)
+                + ",\"brand\":" + quote(item.brand)
+                + ",\"engineNumber\":" + quote(item.engineNumber)
+                + ",\"status\":" + quote(item.status) + "}";
+    }
+
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c)); // Control characters, including line breaks
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    // Parse a flat JSON object whose values are all strings, which is all the requests need
+    static Map<String, String> parseJsonObject(String json) {
+        Map<String, String> fields = new HashMap<>();
+        int[] position = {skipWhitespace(json, 0)};
+        expect(json, position, '{');
+        if (peek(json, position) != '}') {
+            while (true) {
+                String key = parseString(json, position);
+                expect(json, position, ':');
+                fields.put(key, parseString(json, position));
+                if (peek(json, position) == '}') {
+                    break;
+                }
+                expect(json, position, ',');
+            }
+        }
+        position[0]++;
+        if (skipWhitespace(json, position[0]) != json.length()) {
+            throw new IllegalArgumentException("Unexpected text after the JSON object");
+        }
+        return fields;
+    }
+
+    private static String parseString(String json, int[] position) {
+        expect(json, position, '"');
+        StringBuilder value = new StringBuilder();
+        int i = position[0];
+        while (true) {
+            if (i >= json.length()) {
+                throw new IllegalArgumentException("Unterminated string in JSON");
+            }
+            char c = json.charAt(i++);
+            if (c == '"') {
+                break;
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (i >= json.length()) {
+                throw new IllegalArgumentException("Unterminated string in JSON");
+            }
+            char escaped = json.charAt(i++);
+            int simple = "\"\\/bfnrt".indexOf(escaped);
+            if (simple >= 0) {
+                value.append("\"\\/\b\f\n\r\t".charAt(simple));
+            } else if (escaped == 'u' && i + 4 <= json.length()) {
+                try {
+                    value.append((char) Integer.parseInt(json.substring(i, i + 4), 16));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad \\u escape in JSON");
+                }
+                i += 4;
+            } else {
+                throw new IllegalArgumentException("Bad escape in JSON: \\" + escaped);
+            }
+        }
+        position[0] = skipWhitespace(json, i);
+        return value.toString();
+    }
+
+    private static char peek(String json, int[] position) {
+        if (position[0] >= json.length()) {
+            throw new IllegalArgumentException("Unexpected end of JSON");
+        }
+        return json.charAt(position[0]);
+    }
+
+    // Check for a character (after any whitespace) and move past it and the whitespace after it
+    private static void expect(String json, int[] position, char expected) {
+        int i = skipWhitespace(json, position[0]);
+        if (i >= json.length() || json.charAt(i) != expected) {
+            throw new IllegalArgumentException("Expected '" + expected + "' in JSON at position " + i);
+        }
+        position[0] = skipWhitespace(json, i + 1);
+    }
+
+    private static int skipWhitespace(String json, int i) {
+        while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+// Binary inventory snapshot, written next to the CSV file when the journal is on, so the next start
+// can memory-map it instead of parsing the CSV: toList() gives the items already sorted.
+//
+// Layout (big-endian):
+//   header   48 bytes: magic "MPHI", version, record count, records offset, strings offset, strings length,
+//                      CRC32C of everything after the header, CRC32C and size of the CSV file it was
+//                      written from (size -1 if none), reserved
+//   records  20 bytes each, sorted by engine number: offsets of engine number, date entered, stock label,
+//            brand and status in the string section
+//   strings  each one is a 2-byte length plus UTF-8 bytes; repeated values (brands, dates...) are stored once
+//
+// A file is limited to 2 GB, which is tens of millions of rows.
+public class InventorySnapshot {
+
+    private static final int MAGIC = 0x4D504849; // "MPHI"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 48;
+    private static final int READ_BUFFER_SIZE = 1 << 20; // For checksumming the CSV file
+    private static final int RECORD_SIZE = 20;
+
+    private final MappedByteBuffer buffer;
+    private final int recordCount;
+    private final int recordsOffset;
+    private final int stringsOffset;
+
+    private InventorySnapshot(MappedByteBuffer buffer, int recordCount, int recordsOffset, int stringsOffset) {
+        this.buffer = buffer;
+        this.recordCount = recordCount;
+        this.recordsOffset = recordsOffset;
+        this.stringsOffset = stringsOffset;
+    }
+
+    // --------------------------------------------------------------
+    //  Writing
+    // --------------------------------------------------------------
+
+    // Write items (sorted by engine number, no duplicates) to a snapshot file, and remember which CSV file
+    // they came from (see isSnapshotOf). csvFile can be null.
+    public static void write(Path path, List<InventoryManagement.InventoryItem> sortedItems, Path csvFile) throws IOException {
+        if ((long) sortedItems.size() * RECORD_SIZE > Integer.MAX_VALUE - HEADER_SIZE) {
+            throw new IOException("Inventory is too large for a snapshot file");
+        }
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        HashMap<String, Integer> stringOffsets = new HashMap<>(); // Secondary values are written once
+        ByteBuffer records = ByteBuffer.allocate(sortedItems.size() * RECORD_SIZE);
+
+        String previous = null;
+        for (InventoryManagement.InventoryItem item : sortedItems) {
+            if (previous != null && previous.compareTo(item.engineNumber) >= 0) {
+                throw new IllegalArgumentException("Items must be sorted by engine number without duplicates: " + item.engineNumber);
+            }
+            previous = item.engineNumber;
+            records.putInt(appendString(strings, item.engineNumber)); // Unique, so no point looking it up
+            records.putInt(stringOffsets.computeIfAbsent(item.dateEntered, value -> appendString(strings, value)));
+            records.putInt(stringOffsets.computeIfAbsent(item.stockLabel, value -> appendString(strings, value)));
+            records.putInt(stringOffsets.computeIfAbsent(item.brand, value -> appendString(strings, value)));
+            records.putInt(stringOffsets.computeIfAbsent(item.status, value -> appendString(strings, value)));
+        }
+
+        byte[] stringBytes = strings.toByteArray();
+        long totalSize = (long) HEADER_SIZE + records.capacity() + stringBytes.length;
+        if (totalSize > Integer.MAX_VALUE) {
+            throw new IOException("Inventory is too large for a snapshot file");
+        }
+
+        CRC32C checksum = new CRC32C();
+        checksum.update(records.array());
+        checksum.update(stringBytes);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(sortedItems.size());
+        header.putInt(HEADER_SIZE);
+        header.putInt(HEADER_SIZE + records.capacity());
+        header.putInt(stringBytes.length);
+        header.putInt((int) checksum.getValue());
+        header.putInt(csvFile == null ? 0 : checksumOf(csvFile));
+        header.putLong(csvFile == null ? -1 : Files.size(csvFile));
+        header.putLong(0); // Reserved
+        header.flip();
+        records.flip();
+
+        // Write next to the target and swap it in, so readers never see half a file
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] parts = {header, records, ByteBuffer.wrap(stringBytes)};
+            while (parts[2].hasRemaining()) {
+                channel.write(parts);
+            }
+            channel.force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int appendString(ByteArrayOutputStream strings, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Value too long for a snapshot: " + value.substring(0, 32) + "...");
+        }
+        int offset = strings.size();
+        strings.write(bytes.length >>> 8);
+        strings.write(bytes.length);
+        strings.write(bytes, 0, bytes.length);
+        return offset;
+    }
+
+    // CRC32C of a whole file
+    private static int checksumOf(Path file) throws IOException {
+        CRC32C checksum = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                checksum.update(buffer);
+                buffer.clear();
+            }
+        }
+        return (int) checksum.getValue();
+    }
+
+    // --------------------------------------------------------------
+    //  Reading
+    // --------------------------------------------------------------
+
+    // Whether the snapshot was written from csvFile as it is now: same size and same checksum.
+    // Only reads the header, plus the CSV file when the size matches. Snapshots of another version never match.
+    public static boolean isSnapshotOf(Path path, Path csvFile) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    break; // Shorter than a header
+                }
+            }
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            return false;
+        }
+        return header.getLong(32) == Files.size(csvFile) && header.getInt(28) == checksumOf(csvFile);
+    }
+
+    // Map a snapshot file and check its header and checksum
+    public static InventorySnapshot open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not an inventory snapshot: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // Stays valid after the channel closes
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an inventory snapshot: " + path);
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported inventory snapshot version " + version + ": " + path);
+        }
+        int recordCount = buffer.getInt(8);
+        int recordsOffset = buffer.getInt(12);
+        int stringsOffset = buffer.getInt(16);
+        int stringsLength = buffer.getInt(20);
+        if (recordsOffset != HEADER_SIZE
+                || recordCount < 0
+                || stringsOffset != recordsOffset + (long) recordCount * RECORD_SIZE
+                || (long) stringsOffset + stringsLength != buffer.capacity()) {
+            throw new IOException("Inventory snapshot is truncated or damaged: " + path);
+        }
+
+        CRC32C checksum = new CRC32C();
+        checksum.update(buffer.slice(HEADER_SIZE, buffer.capacity() - HEADER_SIZE));
+        if ((int) checksum.getValue() != buffer.getInt(24)) {
+            throw new IOException("Inventory snapshot checksum doesn't match: " + path);
+        }
+        return new InventorySnapshot(buffer, recordCount, recordsOffset, stringsOffset);
+    }
+
+    public int size() {
+        return recordCount;
+    }
+
+    // Every item in engine-number order. Repeated values share one String, like they share bytes in the file.
+    public List<InventoryManagement.InventoryItem> toList() {
+        List<InventoryManagement.InventoryItem> items = new ArrayList<>(recordCount);
+        HashMap<Integer, String> shared = new HashMap<>();
+        for (int index = 0; index < recordCount; index++) {
+            int record = recordsOffset + index * RECORD_SIZE;
+            items.add(new InventoryManagement.InventoryItem(
+                    shared.computeIfAbsent(buffer.getInt(record + 4), this::stringAt),
+                    shared.computeIfAbsent(buffer.getInt(record + 8), this::stringAt),
+                    shared.computeIfAbsent(buffer.getInt(record + 12), this::stringAt),
+                    stringAt(buffer.getInt(record)),
+                    shared.computeIfAbsent(buffer.getInt(record + 16), this::stringAt)));
+        }
+        return items;
+    }
+
+    private String stringAt(int offset) {
+        int position = stringsOffset + offset;
+        int length = Short.toUnsignedInt(buffer.getShort(position));
+        byte[] bytes = new byte[length];
+        buffer.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,146 @@
+import java.util.*;
+
+// Bounded cache that keeps the entries that are used most, not just the ones used last, in the style of
+// W-TinyLFU (the policy behind Caffeine):
+//   window     ~1% of the entries, plain LRU, so new entries get a chance to prove themselves
+//   probation  ~20%, entries that came through the window; evicted first
+//   protected  ~80%, entries that were hit again while on probation
+// When the window is full, its oldest entry competes with the oldest one on probation and the one that has
+// been asked for more often stays. How often is estimated with a count-min sketch of 4-bit counters, which
+// is halved now and then so old popularity fades. A one-off scan of cold keys can't push out the hot ones.
+// Values can't be null. Not thread-safe.
+public class TinyLfuCache<K, V> {
+
+    private final int windowCapacity;
+    private final int protectedCapacity;
+    private final int mainCapacity; // Probation plus protected
+    private final LinkedHashMap<K, V> window = new LinkedHashMap<>(16, 0.75f, true); // Access order, eldest first
+    private final LinkedHashMap<K, V> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> protectedEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+
+    public TinyLfuCache(int capacity) {
+        int size = Math.max(capacity, 2);
+        windowCapacity = Math.max(1, size / 100);
+        mainCapacity = size - windowCapacity;
+        protectedCapacity = mainCapacity * 4 / 5;
+        sketch = new FrequencySketch(size);
+    }
+
+    // The cached value, or null. Counts as a use either way.
+    public V get(K key) {
+        sketch.increment(key);
+        V value = window.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = protectedEntries.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = probation.remove(key);
+        if (value != null) {
+            protectedEntries.put(key, value); // Used again, promote it
+            if (protectedEntries.size() > protectedCapacity) {
+                Map.Entry<K, V> demoted = eldest(protectedEntries);
+                protectedEntries.remove(demoted.getKey());
+                probation.put(demoted.getKey(), demoted.getValue()); // Most recent end of probation
+            }
+        }
+        return value;
+    }
+
+    // Add a value that wasn't cached, usually just after get missed (which already counted the use)
+    public void put(K key, V value) {
+        if (window.containsKey(key) || probation.containsKey(key) || protectedEntries.containsKey(key)) {
+            return; // Already there
+        }
+        window.put(key, value);
+        if (window.size() <= windowCapacity) {
+            return;
+        }
+
+        Map.Entry<K, V> candidate = eldest(window);
+        window.remove(candidate.getKey());
+        if (probation.size() + protectedEntries.size() < mainCapacity) {
+            probation.put(candidate.getKey(), candidate.getValue()); // Room for it
+            return;
+        }
+        LinkedHashMap<K, V> victims = probation.isEmpty() ? protectedEntries : probation;
+        Map.Entry<K, V> victim = eldest(victims);
+        if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+            victims.remove(victim.getKey());
+            probation.put(candidate.getKey(), candidate.getValue());
+        }
+        // Otherwise the candidate is dropped
+    }
+
+    public int size() {
+        return window.size() + probation.size() + protectedEntries.size();
+    }
+
+    private static <K, V> Map.Entry<K, V> eldest(LinkedHashMap<K, V> entries) {
+        return entries.entrySet().iterator().next();
+    }
+
+    // Count-min sketch: 4 rows of 4-bit counters, 16 to a long, and the estimate is the smallest of the 4.
+    // After 10 increments per cached entry every counter is halved.
+    private static class FrequencySketch {
+        private static final long[] SEEDS = {0x97cb3127L, 0xab8d2c49L, 0xc2b2ae3dL, 0x27d4eb2fL};
+        private static final long RESET_MASK = 0x7777777777777777L; // Every counter without its top bit
+
+        private final long[] table;
+        private final int mask; // Counters per row, minus one
+        private final int resetAt;
+        private int increments;
+
+        FrequencySketch(int capacity) {
+            int countersPerRow = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1; // A power of two, at least the capacity
+            table = new long[countersPerRow * SEEDS.length / 16];
+            mask = countersPerRow - 1;
+            resetAt = (int) Math.min(10L * capacity, Integer.MAX_VALUE);
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            for (int row = 0; row < SEEDS.length; row++) {
+                int counter = counterIndex(hash, row);
+                long word = table[counter >>> 4];
+                int shift = (counter & 15) << 2;
+                if (((word >>> shift) & 15) < 15) {
+                    table[counter >>> 4] = word + (1L << shift);
+                }
+            }
+            if (++increments >= resetAt) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK; // Halve every counter, dropping what shifted in from the next one
+                }
+                increments /= 2;
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int smallest = 15;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int counter = counterIndex(hash, row);
+                smallest = Math.min(smallest, (int) (table[counter >>> 4] >>> ((counter & 15) << 2)) & 15);
+            }
+            return smallest;
+        }
+
+        // Where this row's counter for the hash is, counting counters across the whole table
+        private int counterIndex(int hash, int row) {
+            long mixed = (hash + SEEDS[row]) * SEEDS[row];
+            int index = (int) (mixed >>> 32) & mask;
+            return row * (mask + 1) + index;
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 17;
+            hash *= 0xed5ad4bb;
+            hash ^= hash >>> 11;
+            return hash;
+        }
+    }
+}
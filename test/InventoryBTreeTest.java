@@ -0,0 +1,219 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// The on-disk B+tree against a TreeMap doing the same changes: through splits and merges, with a cache
+// small enough that pages are written back and read again, and across closing and opening the file.
+public class InventoryBTreeTest {
+
+    private static final int CACHE_PAGES = 64; // The smallest cache open() allows
+    private static final String STOCK_LABEL = "New " + "x".repeat(80); // Bigger rows, so the tree gets 3 levels sooner
+
+    private Path folder;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("inventory-btree-test");
+        file = folder.resolve("inventory.bt");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path path : files) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    private static InventoryManagement.InventoryItem item(int key, int version) {
+        return new InventoryManagement.InventoryItem("01/01/2024", STOCK_LABEL, "Brand " + (version % 7),
+                String.format("E%06d", key), "On-hand " + version);
+    }
+
+    @Test
+    public void randomChangesSplitAndMergeLikeATreeMap() throws IOException {
+        Random random = new Random(17);
+        TreeMap<String, InventoryManagement.InventoryItem> expected = new TreeMap<>();
+        try (InventoryBTree tree = InventoryBTree.open(file, CACHE_PAGES)) {
+            int tallest = 1;
+            for (int step = 0; step < 40000; step++) {
+                InventoryManagement.InventoryItem item = item(random.nextInt(20000), step);
+                switch (random.nextInt(4)) {
+                    case 0:
+                        InventoryManagement.InventoryItem removed = tree.delete(item.engineNumber);
+                        assertEquals("delete " + item.engineNumber, row(expected.remove(item.engineNumber)), row(removed));
+                        break;
+                    case 1:
+                        InventoryManagement.InventoryItem previous = tree.update(item);
+                        assertEquals("update " + item.engineNumber, row(expected.get(item.engineNumber)), row(previous));
+                        if (previous != null) {
+                            expected.put(item.engineNumber, item);
+                        }
+                        break;
+                    default:
+                        assertEquals("add " + item.engineNumber, !expected.containsKey(item.engineNumber), tree.add(item));
+                        expected.putIfAbsent(item.engineNumber, item); // Duplicates are refused, the old one stays
+                        break;
+                }
+                tallest = Math.max(tallest, tree.height());
+                if (step % 5000 == 4999) {
+                    checkTree(tree, expected, random);
+                }
+            }
+            assertTrue("height " + tallest, tallest >= 3); // Leaves and internal nodes both split
+
+            // Delete almost everything: the nodes merge back until the root is a leaf again
+            List<String> keys = new ArrayList<>(expected.keySet());
+            Collections.shuffle(keys, random);
+            for (String key : keys.subList(10, keys.size())) {
+                assertEquals(key, row(expected.remove(key)), row(tree.delete(key)));
+            }
+            assertEquals(1, tree.height());
+            checkTree(tree, expected, random);
+
+            // The freed pages are used again, so refilling the tree doesn't grow the file
+            tree.flush();
+            long fileSize = Files.size(file);
+            for (String key : keys.subList(10, keys.size() / 2)) {
+                InventoryManagement.InventoryItem item = item(Integer.parseInt(key.substring(1)), 0);
+                assertTrue(key, tree.add(item));
+                expected.put(key, item);
+            }
+            tree.flush();
+            assertEquals(fileSize, Files.size(file));
+            checkTree(tree, expected, random);
+        }
+    }
+
+    @Test
+    public void reopenedTreeHasEverything() throws IOException {
+        TreeMap<String, InventoryManagement.InventoryItem> expected = new TreeMap<>();
+        try (InventoryBTree tree = InventoryBTree.open(file, CACHE_PAGES)) {
+            for (int key = 0; key < 20000; key += 2) {
+                InventoryManagement.InventoryItem item = item(key, key);
+                tree.add(item);
+                expected.put(item.engineNumber, item);
+            }
+        }
+
+        Random random = new Random(170);
+        try (InventoryBTree tree = InventoryBTree.open(file, CACHE_PAGES)) {
+            checkTree(tree, expected, random);
+            for (int key = 0; key < 20000; key += 3) { // Changes after opening it again are saved too
+                String engineNumber = String.format("E%06d", key);
+                if (expected.remove(engineNumber) != null) {
+                    assertNotNull(tree.delete(engineNumber));
+                } else {
+                    InventoryManagement.InventoryItem item = item(key, key);
+                    assertTrue(tree.add(item));
+                    expected.put(engineNumber, item);
+                }
+            }
+        }
+
+        try (InventoryBTree tree = InventoryBTree.open(file, CACHE_PAGES)) {
+            checkTree(tree, expected, random);
+        }
+    }
+
+    @Test
+    public void fileLeftOpenIsRefused() throws IOException {
+        Path crashed = folder.resolve("crashed.bt");
+        try (InventoryBTree tree = InventoryBTree.open(file, CACHE_PAGES)) {
+            for (int key = 0; key < 1000; key++) {
+                tree.add(item(key, key));
+            }
+            tree.flush();
+            tree.delete(String.format("E%06d", 500)); // Sets the "open" flag on disk, and flush() would clear it
+            Files.copy(file, crashed); // The file as the program would leave it if it stopped now
+        }
+
+        try {
+            InventoryBTree.open(crashed, CACHE_PAGES).close();
+            fail("opened a file with the open flag set");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("being changed"));
+        }
+        try (InventoryBTree tree = InventoryBTree.open(file, CACHE_PAGES)) { // Closed properly, so this one is fine
+            assertEquals(999, tree.size());
+            assertNull(tree.get(String.format("E%06d", 500)));
+        }
+    }
+
+    @Test
+    public void crashedChangeIsRolledBackToTheLastFlush() throws IOException {
+        Path crashed = folder.resolve("crashed.bt");
+        Path crashedJournal = folder.resolve("crashed.bt-journal");
+        TreeMap<String, InventoryManagement.InventoryItem> expected = new TreeMap<>();
+        try (InventoryBTree tree = InventoryBTree.open(file, CACHE_PAGES)) {
+            for (int key = 0; key < 20000; key += 2) {
+                InventoryManagement.InventoryItem item = item(key, key);
+                tree.add(item);
+                expected.put(item.engineNumber, item);
+            }
+            tree.flush();
+            assertFalse(Files.exists(folder.resolve("inventory.bt-journal"))); // Gone once everything is saved
+
+            // Enough changes that pages are written over in place, and the tree grows, before any flush
+            long writes = tree.pageWrites();
+            for (int key = 0; key < 20000; key++) {
+                if (key % 2 == 0) {
+                    tree.delete(String.format("E%06d", key));
+                } else {
+                    tree.add(item(key, key));
+                }
+            }
+            assertTrue(tree.pageWrites() > writes + 100);
+            Files.copy(file, crashed); // The files as the program would leave them if it stopped now
+            Files.copy(folder.resolve("inventory.bt-journal"), crashedJournal);
+        }
+
+        Random random = new Random(171);
+        try (InventoryBTree tree = InventoryBTree.open(crashed, CACHE_PAGES)) {
+            assertFalse(Files.exists(crashedJournal)); // Used up
+            checkTree(tree, expected, random);
+            tree.add(item(1, 1)); // And it takes changes again
+            expected.put(String.format("E%06d", 1), item(1, 1));
+        }
+        try (InventoryBTree tree = InventoryBTree.open(crashed, CACHE_PAGES)) {
+            checkTree(tree, expected, random);
+        }
+    }
+
+    // Same size, same items from get(), a full listing and some ranges
+    private static void checkTree(InventoryBTree tree, TreeMap<String, InventoryManagement.InventoryItem> expected, Random random) throws IOException {
+        assertEquals(expected.size(), tree.size());
+        assertEquals(rows(expected.values()), rows(tree.range(null, false, null)));
+        for (int i = 0; i < 200; i++) {
+            String engineNumber = String.format("E%06d", random.nextInt(20000));
+            assertEquals(engineNumber, row(expected.get(engineNumber)), row(tree.get(engineNumber)));
+        }
+        for (int i = 0; i < 20; i++) {
+            String from = String.format("E%06d", random.nextInt(20000));
+            String to = String.format("E%06d", random.nextInt(20000));
+            boolean includeFrom = random.nextBoolean();
+            List<String> inRange = from.compareTo(to) >= 0 ? List.of()
+                    : rows(expected.subMap(from, includeFrom, to, false).values());
+            assertEquals(from + " to " + to, inRange, rows(tree.range(from, includeFrom, to)));
+        }
+    }
+
+    private static String row(InventoryManagement.InventoryItem item) {
+        return item == null ? null : item.toString();
+    }
+
+    private static List<String> rows(Iterable<InventoryManagement.InventoryItem> items) {
+        List<String> rows = new ArrayList<>();
+        for (InventoryManagement.InventoryItem item : items) {
+            rows.add(item.toString());
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,70 @@
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Subscribers only see saved changes, in the order they were made, and one that falls behind is cut off
+// rather than slowing the feed down or quietly missing changes.
+public class InventoryChangeFeedTest {
+
+    private static InventoryChange added(int key) {
+        return InventoryChange.added(new InventoryManagement.InventoryItem("01/01/2024", "New", "Honda",
+                String.format("E%04d", key), "On-hand"));
+    }
+
+    @Test
+    public void slowSubscriberIsCutOff() throws InterruptedException {
+        InventoryChangeFeed feed = new InventoryChangeFeed();
+        try (InventoryChangeFeed.Subscription slow = feed.subscribe(3);
+                InventoryChangeFeed.Subscription fast = feed.subscribe(100)) {
+            for (int key = 0; key < 5; key++) {
+                feed.publish(added(key));
+            }
+            assertTrue(slow.isCutOff());
+            assertFalse(fast.isCutOff());
+
+            // What was queued before the cut-off still comes out, then the gap is reported
+            for (int key = 0; key < 3; key++) {
+                assertEquals(String.format("E%04d", key), slow.poll(0, TimeUnit.SECONDS).getEngineNumber());
+            }
+            try {
+                slow.poll(0, TimeUnit.SECONDS);
+                fail("a cut-off subscriber polled past the gap");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("too far behind"));
+            }
+
+            feed.publish(added(5)); // Not queued for the cut-off one any more
+            for (int key = 0; key < 6; key++) {
+                assertEquals(String.format("E%04d", key), fast.poll(0, TimeUnit.SECONDS).getEngineNumber());
+            }
+            assertNull(fast.poll(0, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void changesWaitForTheirSavesInOrder() throws InterruptedException {
+        InventoryChangeFeed feed = new InventoryChangeFeed();
+        try (InventoryChangeFeed.Subscription changes = feed.subscribe(100)) {
+            CompletableFuture<Void> first = new CompletableFuture<>();
+            CompletableFuture<Void> second = new CompletableFuture<>();
+            CompletableFuture<Void> third = new CompletableFuture<>();
+            feed.publishWhenSaved(added(1), first);
+            feed.publishWhenSaved(added(2), second);
+            feed.publishWhenSaved(added(3), third);
+
+            second.complete(null);
+            assertNull(changes.poll(0, TimeUnit.SECONDS)); // Saved, but the one before it isn't yet
+
+            third.completeExceptionally(new IOException("disk full"));
+            first.complete(null);
+            assertEquals("E0001", changes.poll(0, TimeUnit.SECONDS).getEngineNumber());
+            assertEquals("E0002", changes.poll(0, TimeUnit.SECONDS).getEngineNumber());
+            assertNull(changes.poll(0, TimeUnit.SECONDS)); // Never saved, so never published
+
+            feed.publish(added(4)); // Already saved, and nothing left to wait for
+            assertEquals("E0004", changes.poll(0, TimeUnit.SECONDS).getEngineNumber());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Duplicate engine numbers must be resolved the same way whether a file is sorted (read directly)
+// or not (sorted through InventoryMerge first).
+public class InventoryDiffTest {
+
+    private static final String HEADER = "Date Entered,Stock Label,Brand,Engine Number,Status";
+    private static final String[] DATES = {"01/02/2024", "01/05/2024", "03/01/2023", "n/a"};
+    private static final String[] STATUSES = {"On-hand", "Sold", "Lost"};
+
+    private Path folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("inventory-diff-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    @Test
+    public void latestDateWinsInASortedFile() throws IOException {
+        Path before = write("before.csv", List.of(
+                "01/05/2024,New,Honda,E1,On-hand", "01/05/2024,New,Honda,E2,On-hand", "01/01/2024,New,Honda,E3,On-hand"));
+        Path after = write("after.csv", List.of(
+                "01/02/2024,New,Honda,E1,Lost", "01/05/2024,New,Honda,E1,Sold", // Latest date
+                "01/05/2024,New,Honda,E2,Lost", "01/05/2024,New,Honda,E2,Sold", // Same date, the later row
+                "n/a,New,Honda,E3,Lost", "01/01/2024,New,Honda,E3,On-hand")); // Unreadable is the oldest, so no change
+        assertEquals(List.of("STATUS_CHANGED,01/05/2024,New,Honda,E1,Sold,On-hand",
+                "STATUS_CHANGED,01/05/2024,New,Honda,E2,Sold,On-hand"), diff(before, after));
+    }
+
+    @Test
+    public void sortedAndUnsortedFilesGiveTheSameDiff() throws IOException {
+        Random random = new Random(19);
+        for (int round = 0; round < 50; round++) {
+            List<String> beforeRows = new ArrayList<>();
+            List<String> afterRows = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String engineNumber = String.format("E%03d", i);
+                if (random.nextInt(4) > 0) {
+                    beforeRows.add(row(random, engineNumber));
+                }
+                int copies = random.nextInt(4); // Not there, once, or duplicated
+                for (int copy = 0; copy < copies; copy++) {
+                    afterRows.add(row(random, engineNumber));
+                }
+            }
+            Collections.shuffle(afterRows, random);
+            List<String> sortedRows = new ArrayList<>(afterRows);
+            sortedRows.sort(Comparator.comparing(row -> row.split(",")[3])); // Stable, so duplicates keep their order
+
+            Path before = write("before.csv", beforeRows);
+            List<String> expected = diff(before, write("sorted.csv", sortedRows));
+            assertEquals("round " + round, expected, diff(before, write("unsorted.csv", afterRows)));
+        }
+    }
+
+    private static String row(Random random, String engineNumber) {
+        return DATES[random.nextInt(DATES.length)] + ",New,Honda," + engineNumber + "," + STATUSES[random.nextInt(STATUSES.length)];
+    }
+
+    private Path write(String name, List<String> rows) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        lines.addAll(rows);
+        return Files.write(folder.resolve(name), lines);
+    }
+
+    private static List<String> diff(Path before, Path after) throws IOException {
+        List<InventoryChange> changes = new ArrayList<>();
+        InventoryDiff.diff(before, after, changes::add);
+        return changes.stream().map(InventoryChange::toString).collect(Collectors.toList());
+    }
+}
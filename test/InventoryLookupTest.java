@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Lookups through the sparse index must find every row a full load would, whichever block it lands in:
+// the first and last rows, duplicates next to a block boundary, CRLF files and a last row with no newline.
+public class InventoryLookupTest {
+
+    private static final String HEADER = "Date Entered,Stock Label,Brand,Engine Number,Status";
+
+    private Path folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("inventory-lookup-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    @Test
+    public void everyRowIsFoundWhateverTheBlockSize() throws IOException {
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < 300; i += 3) {
+            rows.add(String.format("02/01/2024,New,Honda,E%04d,On-hand", i));
+            if (i % 30 == 0) {
+                rows.add(String.format("02/01/2024,Old,Honda,E%04d,Sold", i)); // Duplicate, the first row counts
+            }
+        }
+        rows.add("not an item row");
+        rows.add("02/01/2024,New,Honda,E0400,On-hand");
+        for (String lineEnding : List.of("\n", "\r\n")) {
+            for (boolean newlineAtEnd : List.of(true, false)) {
+                Path file = write("sorted.csv", rows, lineEnding, newlineAtEnd);
+                for (int blockSize : List.of(1, 40, 100, 1000, 1 << 20)) {
+                    String name = "block " + blockSize + (lineEnding.length() == 2 ? ", CRLF" : "") + (newlineAtEnd ? "" : ", no newline at the end");
+                    try (InventoryLookup lookup = InventoryLookup.open(file, 16, blockSize)) {
+                        if (blockSize == 1) {
+                            assertEquals(name, 101, lookup.blockCount()); // One per engine number, not per duplicate
+                        } else if (blockSize == 1 << 20) {
+                            assertEquals(name, 1, lookup.blockCount());
+                        }
+                        for (int i = 0; i < 300; i++) {
+                            String engineNumber = String.format("E%04d", i);
+                            String expected = i % 3 != 0 ? null : "02/01/2024,New,Honda," + engineNumber + ",On-hand";
+                            assertEquals(name + ", " + engineNumber, expected, row(lookup.find(engineNumber)));
+                        }
+                        assertEquals(name, "02/01/2024,New,Honda,E0400,On-hand", row(lookup.find("E0400"))); // The last row
+                        assertNull(name, lookup.find("A")); // Before the first row
+                        assertNull(name, lookup.find("E0399"));
+                        assertNull(name, lookup.find("F")); // After the last row
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void missesAreCachedToo() throws IOException {
+        Path file = write("sorted.csv", List.of("02/01/2024,New,Honda,E01,On-hand", "02/02/2024,New,Honda,E03,On-hand"), "\n", true);
+        try (InventoryLookup lookup = InventoryLookup.open(file, 16, 1)) {
+            assertNull(lookup.find("E02"));
+            assertNull(lookup.find("E02")); // From the cache this time
+            assertEquals("02/01/2024,New,Honda,E01,On-hand", row(lookup.find("E01")));
+            assertEquals("02/01/2024,New,Honda,E01,On-hand", row(lookup.find("E01")));
+            assertEquals(0.5, lookup.hitRatio(), 0);
+        }
+    }
+
+    @Test
+    public void unsortedFileIsRefused() throws IOException {
+        Path file = write("unsorted.csv", List.of("02/01/2024,New,Honda,E02,On-hand", "02/02/2024,New,Honda,E01,On-hand"), "\n", false);
+        try {
+            InventoryLookup.open(file, 16, 1).close();
+            fail("opened a file that isn't sorted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("not sorted"));
+        }
+    }
+
+    private Path write(String name, List<String> rows, String lineEnding, boolean newlineAtEnd) throws IOException {
+        String text = HEADER + lineEnding + String.join(lineEnding, rows) + (newlineAtEnd ? lineEnding : "");
+        return Files.write(folder.resolve(name), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String row(InventoryManagement.InventoryItem item) {
+        return item == null ? null : item.toString();
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.*;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// The indexed advanced search must find exactly what checking every item with InventoryQuery.matches finds
+// (that's how the disk inventory searches), whichever index the planner starts from.
+public class InventoryQueryIndexTest {
+
+    private static final String[] BRANDS = {"Honda", "HONDA", "Yamaha", "Suzuki", "Kawasaki"};
+    private static final String[] STATUSES = {"On-hand", "Sold", "ON-HAND"};
+    private static final String[] STOCK_LABELS = {"New", "Old", "new"};
+    private static final String[] ODD_DATES = {"", "n/a", "2024-01-05", "13/01/2024", "01/32/2024"}; // packDate gives -1
+
+    @Test
+    public void unreadableDateNeverMatchesARange() {
+        InventoryQueryIndex index = new InventoryQueryIndex();
+        index.add(new InventoryManagement.InventoryItem("n/a", "New", "Honda", "E1", "On-hand"));
+        index.add(new InventoryManagement.InventoryItem("02/03/2024", "New", "Honda", "E2", "On-hand"));
+        for (int i = 3; i <= 6; i++) {
+            index.add(new InventoryManagement.InventoryItem("02/03/2024", "New", "Yamaha", "E" + i, "On-hand"));
+        }
+
+        // Only an upper bound, with the brand bitmap smaller than the date range, so the dates are checked row by row
+        InventoryQuery query = new InventoryQuery().brand("honda").enteredBetween(null, "12/31/2030");
+        assertEquals(List.of("E2"), engineNumbers(index.search(query)));
+    }
+
+    @Test
+    public void randomQueriesMatchAFullScan() {
+        Random random = new Random(5);
+        List<InventoryManagement.InventoryItem> items = new ArrayList<>();
+        InventoryQueryIndex index = new InventoryQueryIndex();
+        for (int i = 0; i < 3000; i++) {
+            InventoryManagement.InventoryItem item = new InventoryManagement.InventoryItem(randomDate(random),
+                    pick(random, STOCK_LABELS), pick(random, BRANDS), String.format("E%05d", i), pick(random, STATUSES));
+            items.add(item);
+            index.add(item);
+        }
+        for (int i = 0; i < 500; i++) { // Some deletes, so freed slots get reused
+            InventoryManagement.InventoryItem item = items.remove(random.nextInt(items.size()));
+            index.remove(item);
+            if (random.nextBoolean()) {
+                InventoryManagement.InventoryItem readded = new InventoryManagement.InventoryItem(randomDate(random),
+                        pick(random, STOCK_LABELS), pick(random, BRANDS), item.engineNumber, pick(random, STATUSES));
+                items.add(readded);
+                index.add(readded);
+            }
+        }
+
+        for (int i = 0; i < 2000; i++) {
+            InventoryQuery query = new InventoryQuery();
+            if (random.nextInt(3) == 0) {
+                query.brand(pick(random, BRANDS));
+            }
+            if (random.nextInt(3) == 0) {
+                query.status(pick(random, STATUSES));
+            }
+            if (random.nextInt(3) == 0) {
+                query.stockLabel(pick(random, STOCK_LABELS));
+            }
+            switch (random.nextInt(4)) {
+                case 0:
+                    query.enteredBetween(validDate(random), null);
+                    break;
+                case 1:
+                    query.enteredBetween(null, validDate(random));
+                    break;
+                case 2:
+                    query.enteredBetween(validDate(random), validDate(random));
+                    break;
+                default:
+                    break; // No date condition
+            }
+
+            List<String> expected = items.stream().filter(query::matches)
+                    .map(item -> item.engineNumber).sorted().collect(Collectors.toList());
+            assertEquals("query " + i, expected, engineNumbers(index.search(query)));
+        }
+    }
+
+    private static String randomDate(Random random) {
+        return random.nextInt(10) == 0 ? pick(random, ODD_DATES) : validDate(random);
+    }
+
+    private static String validDate(Random random) {
+        return String.format("%02d/%02d/%04d", 1 + random.nextInt(12), 1 + random.nextInt(28), 2020 + random.nextInt(5));
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static List<String> engineNumbers(List<InventoryManagement.InventoryItem> items) {
+        return items.stream().map(item -> item.engineNumber).collect(Collectors.toList());
+    }
+}
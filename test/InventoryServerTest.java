@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// The JSON parser on its own, then real requests against a server on a free port: every way a request
+// can go wrong must come back as the right status code, and the ones that work must change the inventory.
+public class InventoryServerTest {
+
+    private static final String ITEM = "{\"dateEntered\":\"03/01/2024\",\"stockLabel\":\"New\",\"brand\":\"Suzuki\",\"engineNumber\":\"E10\",\"status\":\"On-hand\"}";
+
+    private Path folder;
+    private InventoryServer server;
+    private HttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("inventory-server-test");
+        Path csvFile = folder.resolve("inventory.csv");
+        Files.write(csvFile, List.of("Date Entered,Stock Label,Brand,Engine Number,Status",
+                "02/01/2024,New,Honda,E01,On-hand", "02/02/2024,Old,Yamaha,E02,Sold"));
+
+        InventoryManagement.inventoryRepository = new InventoryRepository(csvFile.toString());
+        InventoryManagement.bulkLoadInventory(InventoryManagement.inventoryRepository.loadInventoryFromCSV());
+        InventoryManagement.inventoryRepository.openJournal(InventoryManagement::getSortedInventory);
+
+        server = new InventoryServer(0);
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop();
+        InventoryManagement.inventoryRepository.closeJournal();
+        InventoryManagement.inventoryRepository = new InventoryRepository();
+        InventoryManagement.bulkLoadInventory(new ArrayList<>());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    @Test
+    public void parsesStringsWithEscapes() {
+        Map<String, String> fields = InventoryServer.parseJsonObject(
+                " { \"a\" : \"plain\" , \"b\":\"quote \\\" backslash \\\\ slash \\/\",\"c\":\"\\n\\t\\u00e9\\u0041\" } ");
+        assertEquals(Map.of("a", "plain", "b", "quote \" backslash \\ slash /", "c", "\n\t\u00e9A"), fields);
+        assertEquals(Map.of(), InventoryServer.parseJsonObject("{}"));
+
+        String awkward = "say \"hi\"\\\r\n\u0001";
+        assertEquals(Map.of("k", awkward), InventoryServer.parseJsonObject("{\"k\":" + InventoryServer.quote(awkward) + "}"));
+    }
+
+    @Test
+    public void malformedJsonIsRefused() {
+        String[] malformed = {"", "[]", "{", "{\"a\"}", "{\"a\":}", "{\"a\":1}", "{\"a\":\"b\",}", "{\"a\":\"b\" \"c\":\"d\"}",
+                "{\"a\":\"unterminated}", "{\"a\":\"b\\", "{\"a\":\"\\x\"}", "{\"a\":\"\\u12\"}", "{\"a\":\"\\uzzzz\"}",
+                "{\"a\":\"b\"} trailing", "{\"a\":\"b\"}}"};
+        for (String json : malformed) {
+            try {
+                InventoryServer.parseJsonObject(json);
+                fail("parsed " + json);
+            } catch (IllegalArgumentException e) {
+                assertNotNull(json, e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void addGetUpdateAndDelete() throws Exception {
+        HttpResponse<String> response = request("POST", "/items", ITEM);
+        assertEquals(201, response.statusCode());
+        assertEquals(ITEM, response.body());
+        assertEquals(409, request("POST", "/items", ITEM).statusCode()); // Same engine number again
+
+        response = request("GET", "/items/E10", null);
+        assertEquals(200, response.statusCode());
+        assertEquals(ITEM, response.body());
+
+        response = request("PATCH", "/items/E10", "{\"status\":\"Sold\"}");
+        assertEquals(200, response.statusCode());
+        assertEquals("Sold", InventoryManagement.findItemByEngineNumber("E10").status);
+
+        response = request("GET", "/items?brand=suzuki", null);
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body(), response.body().contains("\"status\":\"Sold\""));
+
+        response = request("GET", "/items?limit=2", null);
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body(), response.body().endsWith("\"next\":\"E02\"}"));
+
+        assertEquals(200, request("DELETE", "/items/E10", null).statusCode());
+        assertNull(InventoryManagement.findItemByEngineNumber("E10"));
+    }
+
+    @Test
+    public void unknownItemsAreNotFound() throws Exception {
+        assertEquals(404, request("GET", "/items/NOPE", null).statusCode());
+        assertEquals(404, request("PATCH", "/items/NOPE", "{\"status\":\"Sold\"}").statusCode());
+        assertEquals(404, request("DELETE", "/items/NOPE", null).statusCode());
+        assertEquals(404, request("GET", "/elsewhere", null).statusCode());
+    }
+
+    @Test
+    public void badInputIsRefused() throws Exception {
+        assertEquals(400, request("POST", "/items", "{\"engineNumber\":").statusCode()); // Malformed body
+        assertEquals(400, request("POST", "/items", "{\"engineNumber\":\"E11\"}").statusCode()); // Missing fields
+        assertEquals(400, request("POST", "/items", ITEM.replace("Suzuki", "Su,zuki")).statusCode()); // Would break the CSV
+        assertEquals(400, request("POST", "/items", ITEM.replace("Suzuki", "Su\\nzuki")).statusCode());
+        assertEquals(400, request("PATCH", "/items/E01", "{\"colour\":\"Red\"}").statusCode()); // Unknown field
+        assertEquals(400, request("PATCH", "/items/E01", "{\"engineNumber\":\"E99\"}").statusCode());
+        assertEquals(400, request("GET", "/items?limit=lots", null).statusCode());
+        assertEquals(400, request("GET", "/items?limit=0", null).statusCode());
+        assertEquals(405, request("POST", "/items/E01", ITEM).statusCode());
+        assertEquals(405, request("DELETE", "/items", null).statusCode());
+
+        assertNull(InventoryManagement.findItemByEngineNumber("E11")); // Nothing changed
+        assertEquals("On-hand", InventoryManagement.findItemByEngineNumber("E01").status);
+        assertEquals("Honda", InventoryManagement.findItemByEngineNumber("E01").brand);
+    }
+
+    private HttpResponse<String> request(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest.BodyPublisher publisher = body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body);
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + path))
+                .method(method, publisher).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// A binary snapshot only stands in for the CSV file it was written from, as it was then.
+public class InventorySnapshotTest {
+
+    private Path folder;
+    private Path csvFile;
+    private Path snapshotFile;
+    private List<InventoryManagement.InventoryItem> items;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("inventory-snapshot-test");
+        csvFile = folder.resolve("inventory.csv");
+        snapshotFile = folder.resolve("inventory.snapshot");
+        Files.write(csvFile, List.of("Date Entered,Stock Label,Brand,Engine Number,Status",
+                "02/01/2024,New,Honda,E01,On-hand", "02/02/2024,Old,Yamaha,E02,Sold"));
+        items = new InventoryRepository(csvFile.toString()).loadInventoryFromCSV();
+        InventorySnapshot.write(snapshotFile, items, csvFile);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    @Test
+    public void matchesTheCsvFileItWasWrittenFrom() throws IOException {
+        assertTrue(InventorySnapshot.isSnapshotOf(snapshotFile, csvFile));
+        InventorySnapshot snapshot = InventorySnapshot.open(snapshotFile);
+        assertEquals(2, snapshot.size());
+        List<InventoryManagement.InventoryItem> loaded = snapshot.toList();
+        assertEquals("02/01/2024,New,Honda,E01,On-hand", loaded.get(0).toString());
+        assertEquals("02/02/2024,Old,Yamaha,E02,Sold", loaded.get(1).toString());
+    }
+
+    @Test
+    public void sameSizeEditWithTheOldTimeIsNoticed() throws IOException {
+        FileTime written = Files.getLastModifiedTime(csvFile);
+        String csv = new String(Files.readAllBytes(csvFile)).replace("E02,Sold", "E02,Lost"); // Same length
+        Files.write(csvFile, csv.getBytes());
+        Files.setLastModifiedTime(csvFile, written); // Like a copy that keeps the time
+        assertFalse(InventorySnapshot.isSnapshotOf(snapshotFile, csvFile));
+    }
+
+    @Test
+    public void longerCsvFileIsNoticed() throws IOException {
+        Files.write(csvFile, List.of("02/03/2024,New,Suzuki,E03,On-hand"), StandardOpenOption.APPEND);
+        assertFalse(InventorySnapshot.isSnapshotOf(snapshotFile, csvFile));
+    }
+
+    @Test
+    public void snapshotWithoutACsvFileMatchesNone() throws IOException {
+        InventorySnapshot.write(snapshotFile, items, null);
+        assertFalse(InventorySnapshot.isSnapshotOf(snapshotFile, csvFile));
+    }
+
+    @Test
+    public void olderVersionMatchesNone() throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 1), 4); // Version 1 stored no CSV size or checksum
+        }
+        assertFalse(InventorySnapshot.isSnapshotOf(snapshotFile, csvFile));
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Random inserts and deletes on the AVL tree, checked after every step against a TreeMap doing the same:
+// same items in the same order, and every node's height, balance and size correct.
+public class InventoryTreeTest {
+
+    private static InventoryManagement.InventoryItem item(String engineNumber, int version) {
+        return new InventoryManagement.InventoryItem("01/01/2024", "New", "Honda", engineNumber, "On-hand " + version);
+    }
+
+    @Test
+    public void randomInsertsAndDeletesMatchTreeMap() {
+        Random random = new Random(16);
+        for (int round = 0; round < 200; round++) {
+            int keys = 1 + random.nextInt(round < 100 ? 20 : 2000); // Small key ranges hit duplicates and empty trees often
+            InventoryManagement.TreeNode root = null;
+            TreeMap<String, InventoryManagement.InventoryItem> expected = new TreeMap<>();
+            for (int step = 0; step < 1000; step++) {
+                String engineNumber = "E" + random.nextInt(keys);
+                if (random.nextInt(3) > 0) {
+                    InventoryManagement.InventoryItem item = item(engineNumber, step);
+                    root = InventoryManagement.insertIntoAVL(root, item);
+                    expected.putIfAbsent(engineNumber, item); // Duplicates are ignored, the first one stays
+                } else {
+                    root = InventoryManagement.deleteFromAVL(root, engineNumber);
+                    expected.remove(engineNumber);
+                }
+                checkTree(root, expected, "round " + round + ", step " + step);
+            }
+        }
+    }
+
+    @Test
+    public void sortedInsertsStayBalanced() {
+        InventoryManagement.TreeNode root = null;
+        TreeMap<String, InventoryManagement.InventoryItem> expected = new TreeMap<>();
+        for (int i = 0; i < 4096; i++) {
+            InventoryManagement.InventoryItem item = item(String.format("E%05d", i), i);
+            root = InventoryManagement.insertIntoAVL(root, item);
+            expected.put(item.engineNumber, item);
+        }
+        checkTree(root, expected, "after sorted inserts");
+        assertTrue("height " + root.height, root.height <= 14); // 1.44 log2(n) at most, a perfect tree is 13
+        for (int i = 0; i < 4096; i += 2) {
+            root = InventoryManagement.deleteFromAVL(root, String.format("E%05d", i));
+            expected.remove(String.format("E%05d", i));
+        }
+        checkTree(root, expected, "after deleting every other one");
+    }
+
+    private static void checkTree(InventoryManagement.TreeNode root, TreeMap<String, InventoryManagement.InventoryItem> expected, String where) {
+        List<InventoryManagement.InventoryItem> inOrder = new ArrayList<>();
+        checkNode(root, inOrder, where);
+        assertEquals(where, new ArrayList<>(expected.values()), inOrder); // Same item objects, in engine number order
+    }
+
+    // Returns the subtree's height after checking it all the way down
+    private static int checkNode(InventoryManagement.TreeNode node, List<InventoryManagement.InventoryItem> inOrder, String where) {
+        if (node == null) {
+            return 0;
+        }
+        int left = checkNode(node.left, inOrder, where);
+        inOrder.add(node.item);
+        int right = checkNode(node.right, inOrder, where);
+        String at = where + " at " + node.item.engineNumber;
+        assertTrue(at + ": out of balance", Math.abs(left - right) <= 1);
+        assertEquals(at + ": height", Math.max(left, right) + 1, node.height);
+        int size = 1 + (node.left == null ? 0 : node.left.size) + (node.right == null ? 0 : node.right.size);
+        assertEquals(at + ": size", size, node.size);
+        return node.height;
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// In-place updates and bulk mark-sold with the journal on: the tree, the map, the brand index and the
+// advanced search index must all show the new items, and replaying the journal's "U" records over the
+// snapshot must give back the same inventory.
+public class InventoryUpdateTest {
+
+    private Path folder;
+    private Path csvFile;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("inventory-update-test");
+        csvFile = folder.resolve("inventory.csv");
+        List<String> lines = new ArrayList<>();
+        lines.add("Date Entered,Stock Label,Brand,Engine Number,Status");
+        for (int i = 1; i <= 10; i++) {
+            String brand = i <= 5 ? "Honda" : "Yamaha";
+            String status = i == 5 ? "Sold" : "On-hand";
+            lines.add(String.format("02/%02d/2024,New,%s,E%02d,%s", i, brand, i, status));
+        }
+        Files.write(csvFile, lines);
+
+        InventoryManagement.inventoryRepository = new InventoryRepository(csvFile.toString());
+        InventoryManagement.bulkLoadInventory(InventoryManagement.inventoryRepository.loadInventoryFromCSV());
+        InventoryManagement.inventoryRepository.openJournal(InventoryManagement::getSortedInventory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        InventoryManagement.inventoryRepository.closeJournal();
+        InventoryManagement.inventoryRepository = new InventoryRepository();
+        InventoryManagement.bulkLoadInventory(new ArrayList<>());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    @Test
+    public void updateMovesAnItemToItsNewGroups() {
+        InventoryManagement.InventoryItem before = InventoryManagement.findItemByEngineNumber("E03");
+        InventoryManagement.InventoryItem updated = new InventoryManagement.InventoryItem("02/03/2024", "Old", "Suzuki", "E03", "On-hand");
+
+        assertSame(before, InventoryManagement.updateInventoryItem(updated).join());
+        assertSame(updated, InventoryManagement.findItemByEngineNumber("E03"));
+        assertEquals(List.of("E01", "E02", "E04", "E05"), engineNumbers(InventoryManagement.findItemsByBrand("honda")));
+        assertEquals(List.of("E03"), engineNumbers(InventoryManagement.findItemsByBrand("suzuki")));
+        assertEquals(List.of("E03"), engineNumbers(InventoryManagement.queryIndex.search(new InventoryQuery().stockLabel("old"))));
+        checkEverywhere();
+
+        // Same fields again changes nothing, and an unknown engine number isn't added
+        assertEquals(0, (int) InventoryManagement.markItemsSold(List.of("E05", "E99")).join());
+        assertNull(InventoryManagement.updateInventoryItem(new InventoryManagement.InventoryItem("02/03/2024", "New", "Honda", "E99", "Sold")).join());
+        assertNull(InventoryManagement.findItemByEngineNumber("E99"));
+
+        checkReplay(List.of("U,02/03/2024,Old,Suzuki,E03,On-hand"));
+    }
+
+    @Test
+    public void markSoldChangesOnlyTheStatus() {
+        // E05 is sold already and E99 isn't there, so 4 change
+        assertEquals(4, (int) InventoryManagement.markItemsSold(List.of("E01", "E05", "E06", "E99", "E07", "E10")).join());
+
+        for (String engineNumber : List.of("E01", "E05", "E06", "E07", "E10")) {
+            InventoryManagement.InventoryItem item = InventoryManagement.findItemByEngineNumber(engineNumber);
+            assertEquals(engineNumber, "Sold", item.status);
+            assertEquals(engineNumber, "New", item.stockLabel);
+        }
+        assertEquals(List.of("E01", "E05", "E06", "E07", "E10"),
+                engineNumbers(InventoryManagement.queryIndex.search(new InventoryQuery().status("sold"))));
+        assertEquals(List.of("E06", "E07", "E10"),
+                engineNumbers(InventoryManagement.queryIndex.search(new InventoryQuery().brand("yamaha").status("sold"))));
+        assertEquals(5, InventoryManagement.findItemsByBrand("yamaha").size()); // Still in their brand
+        checkEverywhere();
+
+        checkReplay(List.of("U,02/01/2024,New,Honda,E01,Sold", "U,02/06/2024,New,Yamaha,E06,Sold",
+                "U,02/07/2024,New,Yamaha,E07,Sold", "U,02/10/2024,New,Yamaha,E10,Sold"));
+    }
+
+    // The tree, the map and both indexes must agree on every item
+    private static void checkEverywhere() {
+        List<InventoryManagement.InventoryItem> tree = InventoryManagement.getSortedInventory();
+        assertEquals(10, tree.size());
+        assertEquals(10, InventoryManagement.inventorySize());
+        Map<String, List<String>> byBrand = new HashMap<>();
+        for (InventoryManagement.InventoryItem item : tree) {
+            assertSame(item.engineNumber, item, InventoryManagement.findItemByEngineNumber(item.engineNumber));
+            byBrand.computeIfAbsent(item.brand.toLowerCase(), brand -> new ArrayList<>()).add(item.engineNumber);
+        }
+        for (Map.Entry<String, List<String>> brand : byBrand.entrySet()) {
+            assertEquals(brand.getKey(), brand.getValue(), engineNumbers(InventoryManagement.findItemsByBrand(brand.getKey())));
+        }
+        for (String status : List.of("On-hand", "Sold")) {
+            InventoryQuery query = new InventoryQuery().status(status);
+            List<String> expected = tree.stream().filter(query::matches).map(item -> item.engineNumber).collect(Collectors.toList());
+            assertEquals(status, expected, engineNumbers(InventoryManagement.queryIndex.search(query)));
+        }
+    }
+
+    // The journal holds just these records, and loading the snapshot plus the journal gives the inventory as it is now
+    private void checkReplay(List<String> records) {
+        List<String> expected = rows(InventoryManagement.getSortedInventory());
+        InventoryManagement.inventoryRepository.closeJournal(); // Waits for everything queued
+        try {
+            assertEquals(records, Files.readAllLines(folder.resolve("inventory.log")));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        assertEquals(expected, rows(new InventoryRepository(csvFile.toString()).loadInventoryWithJournal()));
+    }
+
+    private static List<String> rows(List<InventoryManagement.InventoryItem> items) {
+        return items.stream().map(InventoryManagement.InventoryItem::toString).collect(Collectors.toList());
+    }
+
+    private static List<String> engineNumbers(List<InventoryManagement.InventoryItem> items) {
+        return items.stream().map(item -> item.engineNumber).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,98 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// The admission policy: a new key only gets into a full cache by being asked for more often than the
+// entry it would push out, so a scan of one-off keys leaves the popular ones alone.
+public class TinyLfuCacheTest {
+
+    // A miss followed by filling it in, the way InventoryLookup uses the cache
+    private static String lookUp(TinyLfuCache<String, String> cache, String key) {
+        String value = cache.get(key);
+        if (value == null) {
+            cache.put(key, "value of " + key);
+        }
+        return value;
+    }
+
+    @Test
+    public void holdsUpToItsCapacity() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100);
+        for (int i = 0; i < 1000; i++) {
+            lookUp(cache, "key " + i);
+            assertTrue(cache.size() <= 100);
+        }
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    public void newEntryIsThereRightAway() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100);
+        for (int i = 0; i < 1000; i++) {
+            lookUp(cache, "key " + i);
+        }
+        assertNull(lookUp(cache, "new"));
+        assertEquals("value of new", cache.get("new")); // In the window, before it has to compete
+    }
+
+    @Test
+    public void scanOfOneOffKeysKeepsThePopularOnes() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(80);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                lookUp(cache, "hot " + i);
+            }
+        }
+        // Like a report over every item while the popular ones are still being looked up. Between two
+        // lookups of a hot key come 99 other keys, so a plain LRU cache of 80 would miss every time.
+        int hotMisses = 0;
+        for (int i = 0; i < 10000; i++) {
+            lookUp(cache, "cold " + i);
+            if (lookUp(cache, "hot " + i % 50) == null) {
+                hotMisses++;
+            }
+        }
+        assertEquals(0, hotMisses);
+    }
+
+    @Test
+    public void keyAskedForMoreOftenGetsIn() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10); // A window of 1 and 9 in the main part
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 10; i++) {
+                lookUp(cache, "old " + i);
+            }
+        }
+
+        // Asked for once: when it leaves the window it loses against the entries asked for twice
+        lookUp(cache, "once");
+        lookUp(cache, "next");
+        assertNull(cache.get("once"));
+
+        // Asked for more often than any of them: it takes the place of one
+        for (int i = 0; i < 4; i++) {
+            lookUp(cache, "often");
+        }
+        lookUp(cache, "after"); // Pushes it out of the window
+        assertEquals("value of often", cache.get("often"));
+        assertEquals(10, cache.size());
+    }
+
+    @Test
+    public void oldPopularityFades() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10);
+        for (int round = 0; round < 15; round++) { // As popular as the counters can say
+            for (int i = 0; i < 10; i++) {
+                lookUp(cache, "old " + i);
+            }
+        }
+        // A new set of popular keys. The counters are halved every 100 uses, so the old ones can't hold on.
+        for (int round = 0; round < 30; round++) {
+            for (int i = 0; i < 9; i++) {
+                lookUp(cache, "new " + i);
+            }
+        }
+        for (int i = 0; i < 9; i++) {
+            assertNotNull("new " + i, cache.get("new " + i));
+        }
+    }
+}